@@ -4,6 +4,10 @@
  */
 package Monitor;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import Asynchronous.Asynchronous;
 
 /**
@@ -39,11 +43,14 @@ public class AsynchMonitor {
             
             started = true;
             
-            item.start();
-            
-            completed = true;
-            
-            taskCompleted(index);
+            try {
+                item.start();
+            } catch (Throwable e) {
+                taskFailed(e);
+            } finally {
+                completed = true;
+                taskCompleted(index);
+            }
             
         }
         
@@ -56,6 +63,54 @@ public class AsynchMonitor {
         
     }    
     
+    // a worker in the shared pool which keeps taking the next task until there are none left
+    private class PooledWorker implements Runnable {
+        
+        @Override
+        public void run() {
+            
+            int i = next.getAndIncrement();
+            while (i < items.length) {
+                try {
+                    items[i].start();
+                } catch (Throwable e) {
+                    taskFailed(e);
+                } finally {
+                    latch.countDown();
+                }
+                i = next.getAndIncrement();
+            }
+            
+        }
+        
+    }
+    
+    // waits for the latch without starving the pool when the waiting thread is itself a pool thread
+    private class LatchBlocker implements ForkJoinPool.ManagedBlocker {
+        
+        @Override
+        public boolean block() throws InterruptedException {
+            latch.await();
+            return true;
+        }
+        
+        @Override
+        public boolean isReleasable() {
+            return latch.getCount() == 0;
+        }
+        
+    }
+    
+    // the pool is shared by every monitor so the threads are only created once
+    private static ForkJoinPool sharedPool;
+    
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sharedPool;
+    }
+    
     private Asynchronous[] items;
     private Process[] process;
     private boolean finished = false;
@@ -64,19 +119,17 @@ public class AsynchMonitor {
     private int maxThreads = 100;
     private volatile int startedCount;  // volatile ensures it is updated fro other threads
     
+    private boolean usePool = false;
+    private CountDownLatch latch;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile Throwable failure;
+    
     // create a monitor for the provided tasks
     public AsynchMonitor(Asynchronous... items) {
         
         this.items = items;
-        this.process = new Process[items.length];
         //this.complete = new boolean[items.length];
 
-        for (int i=0; i < items.length; i++) {
-            
-            process[i] = new Process(i, items[i]);
-            
-        }
-        
     }
     
     // kick off each of the sub tasks
@@ -89,6 +142,17 @@ public class AsynchMonitor {
         started = true;
         finished = false;
         
+        if (usePool) {
+            startPooled();
+            return;
+        }
+        
+        // the threads are only needed when the tasks aren't run on the pool, so they are created here rather than up front
+        this.process = new Process[items.length];
+        for (int i=0; i < items.length; i++) {
+            process[i] = new Process(i, items[i]);
+        }
+        
         startedCount = Math.min(maxThreads, items.length);
  
         // can't use started count because it might get updated by a quick finisher
@@ -104,10 +168,29 @@ public class AsynchMonitor {
 
     }
     
+    // run the tasks on at most max threads at a time
     public void setMaxThreads(int max) {
         this.maxThreads = max;
     }
     
+    // if set the tasks are run on a shared pool of threads rather than each being given its own thread
+    public void setUsePool(boolean usePool) {
+        this.usePool = usePool;
+    }
+    
+    private void startPooled() {
+        
+        latch = new CountDownLatch(items.length);
+        
+        ForkJoinPool pool = getSharedPool();
+        
+        int workers = Math.min(Math.min(maxThreads, items.length), pool.getParallelism());
+        for (int i=0; i < workers; i++) {
+            pool.execute(new PooledWorker());
+        }
+        
+    }
+    
     
     public void startAndWait() throws Exception {
         
@@ -119,10 +202,30 @@ public class AsynchMonitor {
         
         suspend();
         
+        if (failure != null) {
+            throw new Exception("An asynchronous task failed: " + failure, failure);
+        }
+        
     }
     
     public void suspend() {
         
+        if (usePool) {
+            boolean interrupted = false;
+            while (latch.getCount() != 0) {
+                try {
+                    ForkJoinPool.managedBlock(new LatchBlocker());
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            finished = true;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        
         initThread = Thread.currentThread();
         
         while (!finished) {
@@ -181,9 +284,24 @@ public class AsynchMonitor {
         
     }
     
+    // remember the first task which failed so it can be reported to the waiting thread
+    private synchronized void taskFailed(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+    
     public boolean isFinished() {
+        if (usePool && latch != null) {
+            return latch.getCount() == 0;
+        }
         return finished;
     }
     
+    // the first exception thrown by any of the tasks, or null if they all completed normally
+    public Throwable getFailure() {
+        return failure;
+    }
+    
 
 }
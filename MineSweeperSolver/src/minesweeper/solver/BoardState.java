@@ -114,6 +114,50 @@ public class BoardState {
 
 	}
 
+	// a copy whose revealed values can be changed for what-ifs, everything else is shared with the original
+	private BoardState(BoardState original) {
+
+		this.solver = original.solver;
+		this.myGame = original.myGame;
+		this.width = original.width;
+		this.height = original.height;
+
+		this.adjacentLocations1 = original.adjacentLocations1;
+		this.adjacentLocations2 = original.adjacentLocations2;
+
+		this.board = new int[width][];
+		this.revealed = new boolean[width][];
+		for (int x=0; x < width; x++) {
+			this.board[x] = original.board[x].clone();
+			this.revealed[x] = original.revealed[x].clone();
+		}
+
+		this.flagConfirmed = original.flagConfirmed;
+		this.flagOnBoard = original.flagOnBoard;
+		this.adjFlagsConfirmed = original.adjFlagsConfirmed;
+		this.adjFlagsOnBoard = original.adjFlagsOnBoard;
+		this.adjUnrevealed = original.adjUnrevealed;
+		this.action = original.action;
+		this.actionList = original.actionList;
+		this.chordLocations = original.chordLocations;
+		this.livingWitnesses = original.livingWitnesses;
+		this.isolatedDeadTiles = original.isolatedDeadTiles;
+		this.unplayedMoves = original.unplayedMoves;
+
+		this.totalFlags = original.totalFlags;
+		this.totalFlagsConfirmed = original.totalFlagsConfirmed;
+		this.numOfHidden = original.numOfHidden;
+
+	}
+
+	/**
+	 * A copy of the board which what-ifs can be made on, using setWitnessValue() and clearWitness(), while other threads use this one.
+	 * Only the revealed values are copied, so nothing else may be changed through the copy.
+	 */
+	protected BoardState snapshot() {
+		return new BoardState(this);
+	}
+
 	public void process() {
 
 		//flagOnBoard = new boolean[myGame.getWidth()][myGame.getHeight()];
@@ -90,6 +90,13 @@ public class BruteForce {
 			
 				crunchResult  = crunchParallel(web.getSquares(), web.getPrunedWitnesses(), true, iterators);
 
+				// if we were stopped before all the iterations were checked then the results can't be used
+				if (crunchResult == null) {
+					boardState.display("Brute Force was cancelled before it completed");
+					this.bruteForceAnalysis = null;
+					return;
+				}
+				
 				// if there are too many to process then don't bother 
 				if (this.bruteForceAnalysis != null && this.bruteForceAnalysis.tooMany()) {
 					this.bruteForceAnalysis = null;
@@ -165,31 +172,70 @@ public class BruteForce {
 		boardState.display("Non independent iterations = " + web.getNonIndependentIterations(mines));
 
 
-		// if there is only one cog then we can't lock it,so send back a single iterator
-		if (web.getIndependentWitnesses().size() == 1 && web.getIndependentMines() >= mines || totalIterations.compareTo(Solver.PARALLEL_MINIMUM) < 0 || web.getPrunedWitnesses().size() == 0) {
+		// if there isn't much work then send back a single iterator
+		if (totalIterations.compareTo(Solver.PARALLEL_MINIMUM) < 0 || web.getPrunedWitnesses().size() == 0) {
 			boardState.display("Only a single iterator will be used");
 			WitnessWebIterator[] result = new WitnessWebIterator[1];
-			result[0] = new WitnessWebIterator(web, mines);
+			result[0] = new WitnessWebIterator(web, mines, -1, true);
 			return result;
 		}
 
-		int witMines = web.getIndependentWitnesses().get(0).getMines();
-		int squares = web.getIndependentWitnesses().get(0).getSquares().size();
+		// the number of positions each cog can take, the last cog holds the mines not next to an independent witness
+		List<BigInteger> cogSize = new ArrayList<>();
+		for (Witness w: web.getIndependentWitnesses()) {
+			cogSize.add(Solver.combination(w.getMines(), w.getSquares().size()));
+		}
+		if (mines > web.getIndependentMines()) {
+			cogSize.add(web.getNonIndependentIterations(mines));
+		}
 
-		BigInteger bigIterations = Solver.combination(witMines, squares);
+		// lock as many of the leading cogs as are needed to give the number of pieces we want. Every position of the locked cogs
+		// leaves the same number of iterations, so the pieces only differ in size by how the range of the last locked cog is split.
+		BigInteger target = BigInteger.valueOf(Solver.CORES * Solver.PARALLEL_PIECES_PER_CORE);
+		BigInteger locked = BigInteger.ONE;
+		int last = 0;
+		while (last < cogSize.size() - 1 && locked.multiply(cogSize.get(last)).compareTo(target) < 0) {
+			locked = locked.multiply(cogSize.get(last));
+			last++;
+		}
 
-		int iter = bigIterations.intValue();
+		// split the last locked cog into ranges which differ in size by at most 1
+		long lastSize = cogSize.get(last).longValue();
+		long ranges = Math.min(lastSize, target.add(locked).subtract(BigInteger.ONE).divide(locked).longValue());
+		
+		int pieces = locked.multiply(BigInteger.valueOf(ranges)).intValue();
 
-		boardState.display("The first cog has " + iter + " iterations, so parallel processing is possible");
+		boardState.display("Locking " + (last + 1) + " cogs gives " + pieces + " pieces, so parallel processing is possible");
 
-		WitnessWebIterator[] result = new WitnessWebIterator[iter];
+		WitnessWebIterator[] result = new WitnessWebIterator[pieces];
 
-		for (int i=0; i < iter; i++) {
-			result[i] = new WitnessWebIterator(web, mines, i);   // create a iterator with a lock first got at position i
+		// count through the positions of the fully locked cogs
+		long[] position = new long[last + 1];
+		int piece = 0;
+		while (piece < pieces) {
+			
+			long start = 0;
+			for (int i=0; i < ranges; i++) {
+				long range = lastSize / ranges;
+				if (i < lastSize % ranges) {
+					range++;
+				}
+				position[last] = start;
+				result[piece++] = new WitnessWebIterator(web, mines, position.clone(), range, true);
+				start = start + range;
+			}
+			
+			// move on to the next position of the fully locked cogs
+			for (int i=last - 1; i >= 0; i--) {
+				position[i]++;
+				if (position[i] < cogSize.get(i).longValue()) {
+					break;
+				}
+				position[i] = 0;
+			}
+			
 		}
 
-
-
 		return result;
 
 	}
@@ -208,6 +254,7 @@ public class BruteForce {
 
 		AsynchMonitor monitor = new AsynchMonitor(crunchers);
 		monitor.setMaxThreads(Solver.CORES);
+		monitor.setUsePool(true);
 		try {
 			monitor.startAndWait();
 		} catch (Exception ex) {
@@ -217,6 +264,9 @@ public class BruteForce {
 
 		CrunchResult[] results = new CrunchResult[crunchers.length];
 		for (int i=0; i < crunchers.length; i++) {
+			if (crunchers[i].isCancelled()) {
+				return null;
+			}
 			results[i] = crunchers[i].getResult();
 		}
 
@@ -377,6 +427,14 @@ public class BruteForce {
 		return this.iterations;
 	}
 	
+	public List<Square> getSquares() {
+		return web.getSquares();
+	}
+	
+	public int getMines() {
+		return mines;
+	}
+	
 	public int getTileCount() {
 		return web.getSquares().size();
 	}
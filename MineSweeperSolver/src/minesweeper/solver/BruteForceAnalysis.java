@@ -5,11 +5,11 @@ import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import Asynchronous.Asynchronous;
+import Monitor.AsynchMonitor;
 import minesweeper.gamestate.GameStateModel;
 import minesweeper.gamestate.MoveMethod;
 import minesweeper.structure.Action;
@@ -18,18 +18,42 @@ import minesweeper.structure.Location;
 
 public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	
-	// used to hold all the solutions left in the game
+	// used to hold all the solutions left in the game. Each solution is packed 4 bits to a location into one array, a mine
+	// is held as 0 and a value as the value + 1. The order of the solutions is held separately, so copies of the table can
+	// be partitioned independently while sharing the packed solutions.
 	private class SolutionTable {
 		
-		private final byte[][] solutions;
+		private final long[] packed;    // solution * words + location / 16
+		private final int words;        // the number of longs each solution takes
+		private final int[] order;      // the solutions in their current order
 		private int size = 0;
+		
+		// work areas to prevent having to instantiate many 1000's of copies of them
+		private final int[] valueCount = new int[9];
+		private final int[] bucketStart = new int[10];
+		private int[] partitioned;
 
 		private SolutionTable(int maxSize) {
-			solutions = new byte[maxSize][];
+			words = (locations.size() + 15) / 16;
+			packed = new long[maxSize * words];
+			order = new int[maxSize];
+		}
+		
+		// a copy of the table which can be partitioned independently, so each thread needs its own
+		private SolutionTable(SolutionTable table) {
+			packed = table.packed;
+			words = table.words;
+			order = Arrays.copyOf(table.order, table.size);
+			size = table.size;
 		}
 		
 		private void addSolution(byte[] solution) {
-			solutions[size] = solution;
+			int base = size * words;
+			for (int i=0; i < solution.length; i++) {
+				long code = (solution[i] == GameStateModel.MINE) ? 0 : solution[i] + 1;
+				packed[base + (i >>> 4)] |= code << ((i & 15) << 2);
+			}
+			order[size] = size;
 			size++;
 		};
 		
@@ -37,32 +61,70 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			return size;
 		}
 		
-		private byte[] get(int index) {
-			return solutions[index];
+		private int getCode(int index, int location) {
+			return (int) (packed[order[index] * words + (location >>> 4)] >>> ((location & 15) << 2)) & 15;
 		}
 		
-		private void sortSolutions(int start, int end, int index) {
-
-			Arrays.sort(solutions, start, end, sorters[index]);
-			
+		// the value at the location in this solution, or a mine
+		private int getValue(int index, int location) {
+			int code = getCode(index, location);
+			if (code == 0) {
+				return GameStateModel.MINE;
+			} else {
+				return code - 1;
+			}
 		}
 		
-	}
-	
-	/**
-	 * This sorts solutions by the value of a position
-	 */
-	private class SortSolutions implements Comparator<byte[]> {
+		/**
+		 * Group the solutions between start and end by their value at the location, mines first and then in ascending value.
+		 * This is a counting sort, so it takes linear time and solutions with the same value stay in the same order.
+		 */
+		private void partition(int start, int end, int location) {
 
-		private final int sortIndex;
+			if (partitioned == null) {
+				partitioned = new int[order.length];
+			}
+			
+			for (int i=0; i < bucketStart.length; i++) {
+				bucketStart[i] = 0;
+			}
+			for (int i=start; i < end; i++) {
+				bucketStart[getCode(i, location)]++;
+			}
+			
+			// convert the counts into where each value starts
+			int next = start;
+			for (int i=0; i < bucketStart.length; i++) {
+				int count = bucketStart[i];
+				bucketStart[i] = next;
+				next = next + count;
+			}
+			
+			for (int i=start; i < end; i++) {
+				partitioned[bucketStart[getCode(i, location)]++] = order[i];
+			}
+			
+			System.arraycopy(partitioned, start, order, start, end - start);
+			
+		}
 		
-		public SortSolutions(int index) {
-			sortIndex = index;
+		// keep only the solutions which have the values revealed in this position
+		private void select(Position position) {
+			int kept = 0;
+			for (int i=0; i < size; i++) {
+				if (position.matches(this, i)) {
+					order[kept] = order[i];
+					kept++;
+				}
+			}
+			size = kept;
 		}
 		
-		@Override
-		public int compare(byte[] o1, byte[] o2) {
-			return o1[sortIndex] - o2[sortIndex];
+		private int[] resetValues() {
+			for (int i=0; i < valueCount.length; i++) {
+				valueCount[i] = 0;
+			}
+			return valueCount;
 		}
 		
 	}
@@ -73,6 +135,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	private class Position {
 		
 		private final byte[] position;
+		private final long key;       // the Zobrist hash of the values revealed, used to find the position in the transposition table
 		private int hash;
 		
 		private Position() {
@@ -80,12 +143,24 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			for (int i=0; i < position.length; i++) {
 				position[i] = 15;
 			}
+			key = 0;
 		}
 		
 		private Position(Position p, int index, int value) {
 			// copy and update to reflect the new position
 			position = Arrays.copyOf(p.position, p.position.length);
 			position[index] = (byte) (value + 50);			
+			key = p.key ^ hashKeys[index * 9 + value];
+		}
+		
+		// true if the solution has the values revealed in this position
+		private boolean matches(SolutionTable table, int index) {
+			for (int i=0; i < position.length; i++) {
+				if (position[i] != 15 && table.getValue(index, i) != position[i] - 50) {
+					return false;
+				}
+			}
+			return true;
 		}
 		
 		@Override
@@ -144,14 +219,14 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		 * @param location
 		 * @return
 		 */
-		private void buildChildNodes(Node parent) {
+		private void buildChildNodes(Node parent, SolutionTable table) {
 			
 			// sort the solutions by possible values
-			allSolutions.sortSolutions(parent.startLocation, parent.endLocation, this.index);
+			table.partition(parent.startLocation, parent.endLocation, this.index);
 			int index = parent.startLocation;
 			
 			// skip over the mines
-			while (index < parent.endLocation && allSolutions.get(index)[this.index] == GameStateModel.MINE) {
+			while (index < parent.endLocation && table.getValue(index, this.index) == GameStateModel.MINE) {
 				index++;
 			}
 			
@@ -161,14 +236,14 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				// if the node is in the cache then use it
 				Position pos = new Position(parent.position, this.index, i);
 				
-				Node temp1 = cache.get(pos);
-				if (temp1 == null) {
+				long entry = transpositions.probe(pos.key);
+				if (entry == TranspositionTable.NOT_FOUND) {
 
 					Node temp = new Node(pos);
 					
 					temp.startLocation = index;
 					// find all solutions for this values at this location
-					while (index < parent.endLocation && allSolutions.get(index)[this.index] == i) {
+					while (index < parent.endLocation && table.getValue(index, this.index) == i) {
 						index++;
 					}					
 					temp.endLocation = index;
@@ -181,13 +256,20 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 					//	System.out.println("Cache not equal!!");
 					//}
 					//temp1.fromCache = true;
+					Node temp1 = new Node(pos);
+					temp1.fromCache = true;
+					temp1.winningLines = TranspositionTable.getWinningLines(entry);
+					temp1.tableMove = TranspositionTable.getBestMove(entry);
+					
 					work[i] = temp1;
-					cacheHit++;
-					cacheWinningLines = cacheWinningLines + temp1.winningLines;
+					cacheHit.incrementAndGet();
+					cacheWinningLines.addAndGet(temp1.winningLines);
 					// skip past these details in the array
-					while (index < parent.endLocation && allSolutions.get(index)[this.index] <= i) {
+					temp1.startLocation = index;
+					while (index < parent.endLocation && table.getValue(index, this.index) <= i) {
 						index++;
 					}					
+					temp1.endLocation = index;
 				}
 
 			}
@@ -257,6 +339,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		private List<LivingLocation> livingLocations;   // these are the locations which need to be analysed
 		 
 		private LivingLocation bestLiving;              // after analysis this is the location that represents best play
+		private int tableMove = -1;                     // the best move of a position found in the transposition table
 
 		private Node() {
 			position = new Position();
@@ -290,13 +373,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		 */
 		private int getWinningLines(LivingLocation move) {
 
-			//if we can never exceed the cutoff then no point continuing
-			if (Solver.PRUNE_BF_ANALYSIS && this.getSolutionSize() - move.mineCount <= this.winningLines) {
-				move.pruned = true;
-				return 0;
-			}
-			
-			int winningLines = getWinningLines(1, move, this.winningLines);
+			int winningLines = getWinningLines(move, this.winningLines, allSolutions);
 			
 			if (winningLines > this.winningLines) {
 				this.winningLines = winningLines;
@@ -305,23 +382,47 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			return winningLines;
 		}
 		
+		/**
+		 * Calculate the number of winning lines if this move is played at this position, stopping if it can't beat the cutoff
+		 * Used at top of the game tree
+		 */
+		private int getWinningLines(LivingLocation move, int cutoff, SolutionTable table) {
+
+			move.pruned = false;
+			
+			//if we can never exceed the cutoff then no point continuing
+			if (Solver.PRUNE_BF_ANALYSIS && this.getSolutionSize() - move.mineCount <= cutoff) {
+				move.pruned = true;
+				return 0;
+			}
+			
+			return getWinningLines(1, move, cutoff, table);
+			
+		}
+		
 		
 		/**
 		 * Calculate the number of winning lines if this move is played at this position
 		 * Used when exploring the game tree
 		 */
-		private int getWinningLines(int depth, LivingLocation move, int cutoff) {
+		private int getWinningLines(int depth, LivingLocation move, int cutoff, SolutionTable table) {
 
 			int result = 0;
 			
-			processCount++;
-			if (processCount > solver.preferences.getBruteForceMaxNodes()) {
+			int count = processCount.incrementAndGet();
+			if ((!timeLimited && count - nodeBase > solver.preferences.getBruteForceMaxNodes()) || cancelled) {
+				return 0;
+			}
+			
+			// every so often see if we have been asked to stop
+			if (count % CANCEL_CHECK_INTERVAL == 0 && solver.getCancellation().isCancelled()) {
+				cancelled = true;
 				return 0;
 			}
 
 			int notMines = this.getSolutionSize() - move.mineCount;
 			
-			move.buildChildNodes(this);   
+			move.buildChildNodes(this, table);   
 			
 			for (Node child: move.children) {
 
@@ -342,7 +443,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 					this.work++;
 				} else {
 					
-					child.determineLivingLocations(this.livingLocations, move.index);
+					child.determineLivingLocations(this.livingLocations, move.index, table);
 					this.work++;
 									
 					if (child.getLivingLocations().isEmpty()) {  // no further information ==> all solution indistinguishable ==> 1 winning line
@@ -359,7 +460,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 							}
 							
 							// now calculate the winning lines for each of these children
-							int winningLines = child.getWinningLines(depth + 1, childMove, child.winningLines);
+							int winningLines = child.getWinningLines(depth + 1, childMove, child.winningLines, table);
 							if (child.winningLines < winningLines || (child.bestLiving != null && child.winningLines == winningLines && child.bestLiving.mineCount < childMove.mineCount)) {
 								child.winningLines = winningLines;
 								child.bestLiving = childMove;
@@ -382,10 +483,10 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 						
 						// add the child to the cache if it didn't come from there and it is carrying sufficient winning lines
 						if (child.work > 30) {
+							transpositions.store(child.position.key, child.winningLines, child.bestLiving == null ? -1 : child.bestLiving.index, child.work);
 							child.work = 0;
 							child.fromCache = true;
-							cacheSize++;
-							cache.put(child.position, child);
+							cacheSize.incrementAndGet();
 						} else {
 							this.work = this.work + child.work;
 						}
@@ -414,7 +515,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		 * this generates a list of Location that are still alive, (i.e. have more than one possible value) from a list of previously living locations
 		 * Index is the move which has just been played (in terms of the off-set to the position[] array)
 		 */
-		private void determineLivingLocations(List<LivingLocation> liveLocs, int index) {
+		private void determineLivingLocations(List<LivingLocation> liveLocs, int index, SolutionTable table) {
 			
 			List<LivingLocation> living = new ArrayList<>(liveLocs.size());
 			
@@ -426,7 +527,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				
 				int value;
 				
-				int valueCount[] = resetValues(0);
+				int valueCount[] = table.resetValues();
 				int mines = 0;
 				int maxSolutions = 0;
 				byte count = 0;
@@ -434,7 +535,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 				byte maxValue = 0;
 				
 				for (int j=startLocation; j < endLocation; j++) {
-					value = allSolutions.get(j)[live.index];
+					value = table.getValue(j, live.index);
 					if (value != GameStateModel.MINE) {
 						//values[value] = true;
 						valueCount[value]++;
@@ -491,11 +592,84 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		
 	}
 	
+	/**
+	 * Analyses one of the top moves, so they can be spread over the available cores
+	 */
+	private class TopMove implements Asynchronous<Integer> {
+		
+		private final Node top;
+		private final LivingLocation move;
+		private final AtomicInteger bestSoFar;   // the best winning lines found by any of the top moves so far
+		
+		private int cutoff;                      // the cutoff this move was analysed with
+		private int winningLines;
+		private boolean pruned;                  // whether the move was pruned, kept since analysing it again resets the move's flag
+		private boolean analysed = false;        // true if the analysis finished without being cancelled
+		
+		private TopMove(Node top, LivingLocation move, AtomicInteger bestSoFar) {
+			this.top = top;
+			this.move = move;
+			this.bestSoFar = bestSoFar;
+		}
+		
+		@Override
+		public void start() {
+			
+			if (!cancelled && solver.getCancellation().isCancelled()) {
+				cancelled = true;
+			}
+			if (cancelled) {
+				return;
+			}
+			
+			cutoff = bestSoFar.get();
+			
+			// each thread sorts the solutions as it goes, so it needs its own copy of the table
+			winningLines = top.getWinningLines(move, cutoff, new SolutionTable(allSolutions));
+			
+			if (cancelled) {
+				return;
+			}
+			
+			analysed = true;
+			pruned = move.pruned;
+			
+			if (!pruned) {
+				int best = bestSoFar.get();
+				while (winningLines > best && !bestSoFar.compareAndSet(best, winningLines)) {
+					best = bestSoFar.get();
+				}
+				publishBest(top, move, winningLines);
+			}
+			
+		}
+		
+		// the analysis can't be completed without every move, so stopping one stops them all
+		@Override
+		public void requestStop() {
+			cancelled = true;
+		}
+		
+		@Override
+		public Integer getResult() {
+			return winningLines;
+		}
+		
+	}
+	
 	private static final String INDENT = "................................................................................";
 	
 	private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
 	
-	private int processCount = 0;
+	// how many nodes are processed between checks on whether the analysis has been cancelled
+	private static final int CANCEL_CHECK_INTERVAL = 256;
+	
+	private final AtomicInteger processCount = new AtomicInteger();   // shared by the threads analysing the top moves
+	private volatile int nodeBase = 0;   // the node count the limit on nodes is measured from, moved on each time a node is rebuilt
+	private volatile boolean cancelled = false;
+	private int publishedLines = 0;               // the winning lines of the move last given to the solver as its current best
+	private LivingLocation publishedMove = null;
+	private final boolean timeLimited;   // in anytime mode the analysis runs until the time is up rather than to a number of nodes
 	
 	private final Solver solver;
 	private final int maxSolutionSize;
@@ -512,34 +686,39 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	private Node currentNode;
 	private Location expectedMove;
 	
-	private final SortSolutions[] sorters;
-	
-	private int cacheHit = 0;
-	private int cacheSize = 0;
-	private int cacheWinningLines = 0;
+	private final AtomicInteger cacheHit = new AtomicInteger();
+	private final AtomicInteger cacheSize = new AtomicInteger();
+	private final AtomicInteger cacheWinningLines = new AtomicInteger();
 	private boolean allDead = false;   // this is true if all the locations are dead
 	private Area deadLocations = Area.EMPTY_AREA;
 	
 	// some work areas to prevent having to instantiate many 1000's of copies of them 
 	//private final boolean[] values = new boolean[9];
-	private final int[][] valueCount = new int[2][9];
 	
-	private Map<Position, Node> cache = new HashMap<>(5000);
+	private final long[] hashKeys;     // the Zobrist key for each location and value, location * 9 + value
+	
+	// the cache is shared by the threads analysing the top moves, so a position found by one is available to all
+	private TranspositionTable transpositions;
 	
 	public BruteForceAnalysis(Solver solver, List<? extends Location> locations, int size, String scope, List<Location> startLocations) {
 		
 		this.solver = solver;
+		this.timeLimited = solver.preferences.isAnytime() && solver.preferences.getMoveTimeLimit() > 0;
 		this.locations = locations;
 		this.maxSolutionSize = size;
 		this.scope = scope;
 		this.allSolutions = new SolutionTable(size);
 		//this.top = new Node();
-		this.sorters = new SortSolutions[locations.size()];
-		for (int i=0; i < sorters.length; i++) {
-			this.sorters[i] = new SortSolutions(i);
-		}
 		
 		this.startLocations = startLocations;
+		
+		long seed = solver.preferences.getHashSeed();
+		this.hashKeys = new long[locations.size() * 9];
+		for (int i=0; i < locations.size(); i++) {
+			for (int value=0; value < 9; value++) {
+				hashKeys[i * 9 + value] = ProbabilityLineTable.zobristKey(seed, i, value);
+			}
+		}
 
 	}
 	
@@ -576,6 +755,13 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		solver.display("----- Brute Force Deep Analysis starting ----");
 		solver.display(allSolutions.size() + " solutions in BruteForceAnalysis");
 		
+		// the table doesn't need to be larger than the number of nodes the analysis can explore would fill
+		int tableSize = solver.preferences.getBruteForceTableSize();
+		if (!timeLimited) {
+			tableSize = Math.min(tableSize, Math.max(1024, solver.preferences.getBruteForceMaxNodes() / 16));
+		}
+		transpositions = new TranspositionTable(tableSize);
+		
 		// create the top node 
 		Node top = buildTopNode(allSolutions);
 		
@@ -583,7 +769,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			allDead = true;
 		}
 		
-		int best = 0;
+		List<LivingLocation> moves = new ArrayList<>();
 		
 		for (LivingLocation move: top.getLivingLocations()) {
 			
@@ -601,46 +787,226 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 					continue;
 				}				
 			}
-
+			
+			moves.add(move);
+		}
+		
+		if (Solver.CORES > 1 && moves.size() > 1 && allSolutions.size() >= Solver.BRUTE_FORCE_ANALYSIS_PARALLEL_MINIMUM) {
+			processParallel(top, moves);
+		} else {
+			processSequential(top, moves);
+		}
+		
+		currentNode = top;
+		
+		if (cancelled) {
+			solver.display("Brute Force Deep Analysis was cancelled after " + processCount.get() + " nodes");
+			if (timeLimited && top.bestLiving != null) {
+				solver.display("Using the best of the moves analysed so far");
+				this.completed = true;
+			}
+		} else if (timeLimited || processCount.get() < solver.preferences.getBruteForceMaxNodes()) {
+			this.completed = true;
+			if (solver.isShowProbabilityTree()) {
+				solver.newLine("--------- Probability Tree dump start ---------");
+				showTree(0, 0, top);
+				solver.newLine("---------- Probability Tree dump end ----------");
+			}
+		}
+		
+		
+		// the table is bounded, so it is kept to rebuild the parts of the tree which were found in it as the moves are played
+		
+		long end = System.currentTimeMillis();
+		solver.display("Transposition table has " + transpositions.capacity() + " slots");
+		solver.display("Total nodes in cache = " + cacheSize + ", total cache hits = " + cacheHit + ", total winning lines saved = " + this.cacheWinningLines );
+		solver.display("process took " + (end - start) + " milliseconds and explored " + processCount + " nodes" );
+		solver.display("----- Brute Force Deep Analysis finished ----");
+	}
+	
+	/**
+	 * Analyse the top moves one after another, each using the best winning lines so far as its cutoff
+	 */
+	private void processSequential(Node top, List<LivingLocation> moves) {
+		
+		int best = 0;
+		
+		for (LivingLocation move: moves) {
+			
+			// stop if we have been asked to, in anytime mode the best of the moves analysed so far will be played
+			if (!cancelled && solver.getCancellation().isCancelled()) {
+				cancelled = true;
+			}
+			if (cancelled) {
+				break;
+			}
+			
 			int winningLines = top.getWinningLines(move);  // calculate the number of winning lines if this move is played
 			
+			// if the time ran out part way through this move then its winning lines aren't complete
+			if (cancelled) {
+				solver.display(move.index + " " + locations.get(move.index).display() + " was still being analysed when the analysis was cancelled");
+				break;
+			}
+			
 			if (best < winningLines || (top.bestLiving != null && best == winningLines && top.bestLiving.mineCount < move.mineCount)) {
 				best = winningLines;
 				top.bestLiving = move;
+				publishBest(top, move, winningLines);
 			}
 			
-			BigDecimal singleProb = BigDecimal.valueOf(allSolutions.size() - move.mineCount).divide(BigDecimal.valueOf(allSolutions.size()), Solver.DP, RoundingMode.HALF_UP);
+			displayMove(move, winningLines);
 			
-			if (move.pruned) {
-				solver.display(move.index + " " + locations.get(move.index).display() + " is living with " + move.count + " possible values and probability " + percentage(singleProb) + ", this location was pruned");
+		}
+		
+		top.winningLines = best;
+		
+	}
+	
+	/**
+	 * Analyse the top moves in parallel. Each thread takes the next move in order and uses the best winning lines found by any
+	 * move so far as its cutoff. The cutoffs can differ from those a sequential analysis would use, so the results are reviewed
+	 * in order afterwards and any move which might have finished differently is analysed again. This way the same move is
+	 * chosen whichever order the threads finish in.
+	 */
+	private void processParallel(Node top, List<LivingLocation> moves) {
+		
+		AtomicInteger bestSoFar = new AtomicInteger();
+		
+		TopMove[] tasks = new TopMove[moves.size()];
+		for (int i=0; i < tasks.length; i++) {
+			tasks[i] = new TopMove(top, moves.get(i), bestSoFar);
+		}
+		
+		AsynchMonitor monitor = new AsynchMonitor(tasks);
+		monitor.setMaxThreads(Solver.CORES);
+		monitor.setUsePool(true);
+		try {
+			monitor.startAndWait();
+		} catch (Exception ex) {
+			System.out.println("Parallel processing caused an error!");
+			ex.printStackTrace();
+			cancelled = true;   // treat this like a cancellation, since some of the moves weren't analysed
+		}
+		
+		// once cancelled the moves can't be analysed again, so play the best of those which finished
+		if (cancelled) {
+			selectAnalysed(top, tasks);
+			return;
+		}
+		
+		// a move which wasn't pruned has its exact winning lines, so this is the best any move can do
+		int best = bestSoFar.get();
+		
+		LivingLocation bestMove = null;
+		
+		for (TopMove task: tasks) {
+			
+			if (!task.analysed) {
+				continue;
+			}
+			
+			LivingLocation move = task.move;
+			int winningLines = task.winningLines;
+			
+			if (bestMove == null) {
+				// a sequential analysis would reach this move with a cutoff below the best, so if it was pruned at the best it might have equalled it 
+				if (move.pruned && task.cutoff >= best && best > 0) {
+					winningLines = top.getWinningLines(move, best - 1, allSolutions);
+				}
 			} else {
-				solver.display(move.index + " " + locations.get(move.index).display() + " is living with " + move.count + " possible values and probability " + percentage(singleProb) + ", winning lines " + winningLines);
+				// a sequential analysis would reach this move with the best as its cutoff, which decides whether a move which equals the best is pruned
+				if (!move.pruned && winningLines == best && task.cutoff != best) {
+					winningLines = top.getWinningLines(move, best, allSolutions);
+				}
+			}
+			
+			// the time ran out while this move was analysed again, so fall back to the results the threads finished with
+			if (cancelled) {
+				selectAnalysed(top, tasks);
+				return;
+			}
+			
+			if (!move.pruned && best > 0 && winningLines == best && (bestMove == null || bestMove.mineCount < move.mineCount)) {
+				bestMove = move;
 			}
 			
+			displayMove(move, winningLines);
 			
 		}
 		
-		top.winningLines = best;
+		if (bestMove != null) {
+			top.winningLines = best;
+			top.bestLiving = bestMove;
+		}
 		
-		currentNode = top;
+	}
+	
+	/**
+	 * After a cancellation pick the best of the top moves which were fully analysed, choosing between them the way
+	 * the sequential analysis does
+	 */
+	private void selectAnalysed(Node top, TopMove[] tasks) {
 		
-		if (processCount < solver.preferences.getBruteForceMaxNodes()) {
-			this.completed = true;
-			if (solver.isShowProbabilityTree()) {
-				solver.newLine("--------- Probability Tree dump start ---------");
-				showTree(0, 0, top);
-				solver.newLine("---------- Probability Tree dump end ----------");
+		int best = 0;
+		LivingLocation bestMove = null;
+		
+		for (TopMove task: tasks) {
+			
+			if (!task.analysed) {
+				continue;
+			}
+			
+			LivingLocation move = task.move;
+			
+			// a pruned move's winning lines are only a bound, so it can't be chosen
+			if (!task.pruned && (best < task.winningLines || (bestMove != null && best == task.winningLines && bestMove.mineCount < move.mineCount))) {
+				best = task.winningLines;
+				bestMove = move;
 			}
+			
+			displayMove(move, task.winningLines);
+			
 		}
 		
+		top.winningLines = best;
+		top.bestLiving = bestMove;
 		
-		// clear down the cache
-		cache.clear();
+	}
+	
+	/**
+	 * In anytime mode the best of the top moves analysed so far is played if the time runs out, so the solver is given each
+	 * move which beats those before it as soon as it has been analysed
+	 */
+	private synchronized void publishBest(Node top, LivingLocation move, int winningLines) {
+		
+		if (!timeLimited) {
+			return;
+		}
+		
+		if (publishedLines < winningLines || (publishedMove != null && publishedLines == winningLines && publishedMove.mineCount < move.mineCount)) {
+			publishedLines = winningLines;
+			publishedMove = move;
+			
+			BigDecimal prob = BigDecimal.ONE.subtract(BigDecimal.valueOf(move.mineCount).divide(BigDecimal.valueOf(top.getSolutionSize()), Solver.DP, RoundingMode.HALF_UP));
+			BigDecimal solve = BigDecimal.valueOf(winningLines).divide(BigDecimal.valueOf(top.getSolutionSize()), Solver.DP, RoundingMode.HALF_UP);
+			
+			String text = " (solve " + scope + " " + percentage(solve) + "%)";
+			solver.setCurrentBest(new Action(locations.get(move.index), Action.CLEAR, MoveMethod.BRUTE_FORCE_DEEP_ANALYSIS, text, prob));
+		}
+		
+	}
+	
+	private void displayMove(LivingLocation move, int winningLines) {
+		
+		BigDecimal singleProb = BigDecimal.valueOf(allSolutions.size() - move.mineCount).divide(BigDecimal.valueOf(allSolutions.size()), Solver.DP, RoundingMode.HALF_UP);
+		
+		if (move.pruned) {
+			solver.display(move.index + " " + locations.get(move.index).display() + " is living with " + move.count + " possible values and probability " + percentage(singleProb) + ", this location was pruned");
+		} else {
+			solver.display(move.index + " " + locations.get(move.index).display() + " is living with " + move.count + " possible values and probability " + percentage(singleProb) + ", winning lines " + winningLines);
+		}
 		
-		long end = System.currentTimeMillis();
-		solver.display("Total nodes in cache = " + cacheSize + ", total cache hits = " + cacheHit + ", total winning lines saved = " + this.cacheWinningLines );
-		solver.display("process took " + (end - start) + " milliseconds and explored " + processCount + " nodes" );
-		solver.display("----- Brute Force Deep Analysis finished ----");
 	}
 	
 	/**
@@ -660,7 +1026,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		for (short i=0; i < locations.size(); i++) {
 			int value;
 			
-			int valueCount[] = resetValues(0);
+			int valueCount[] = solutionTable.resetValues();
 			int mines = 0;
 			int maxSolutions = 0;
 			byte count = 0;
@@ -668,8 +1034,8 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 			byte maxValue = 0;
 			
 			for (int j=0; j < result.getSolutionSize(); j++) {
-				if (solutionTable.get(j)[i] != GameStateModel.MINE) {
-					value = solutionTable.get(j)[i];
+				value = solutionTable.getValue(j, i);
+				if (value != GameStateModel.MINE) {
 					//values[value] = true;
 					valueCount[value]++;
 				} else {
@@ -714,13 +1080,6 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 		return result;
 	}
 	
-	private int[] resetValues(int thread) {
-		for (int i=0; i < valueCount[thread].length; i++) {
-			valueCount[thread][i] = 0;
-		}
-		return valueCount[thread];
-	}
-	
 	@Override
 	protected int getSolutionCount() {
 		return allSolutions.size();
@@ -728,7 +1087,7 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	
 	@Override
 	protected int getNodeCount() {
-		return processCount;
+		return processCount.get();
 	}
 	
 	@Override
@@ -786,10 +1145,55 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	
 	private LivingLocation getBestLocation(Node node) {
 		
+		if (node.bestLiving == null && node.tableMove != -1) {
+			rebuildNode(node);
+		}
+		
 		return node.bestLiving;
 		
 	}
 	
+	/**
+	 * A position found in the transposition table only knows its best move, so analyse that move again to rebuild the tree below it
+	 */
+	private void rebuildNode(Node node) {
+		
+		SolutionTable table = new SolutionTable(allSolutions);
+		table.select(node.position);
+		node.startLocation = 0;
+		node.endLocation = table.size();
+		
+		// any location which hasn't been revealed might still be living
+		List<LivingLocation> unrevealed = new ArrayList<>();
+		for (short i=0; i < locations.size(); i++) {
+			if (node.position.position[i] == 15) {
+				LivingLocation live = new LivingLocation(i);
+				live.minValue = 0;
+				live.maxValue = 8;
+				unrevealed.add(live);
+			}
+		}
+		node.determineLivingLocations(unrevealed, -1, table);
+		
+		// the rebuild happens on a later move, so it gets a node limit of its own and isn't stopped by a cancellation of the original analysis
+		nodeBase = processCount.get();
+		cancelled = false;
+		
+		for (LivingLocation move: node.getLivingLocations()) {
+			if (move.index == node.tableMove) {
+				// if the analysis can't be repeated, e.g. because it has run out of time, then the tree stops here 
+				if (node.getWinningLines(1, move, node.winningLines - 1, table) == node.winningLines) {
+					node.bestLiving = move;
+				}
+				break;
+			}
+		}
+		
+		node.tableMove = -1;
+		node.livingLocations = null;
+		
+	}
+	
 	
 	private void showTree(int depth, int value, Node node) {
 		
@@ -829,6 +1233,21 @@ public class BruteForceAnalysis extends BruteForceAnalysisModel{
 	}
 	
 	
+	// the best first move once the analysis is complete, or null if there isn't one
+	protected Location getBestFirstMove() {
+		
+		if (currentNode == null || currentNode.bestLiving == null) {
+			return null;
+		}
+		
+		return locations.get(currentNode.bestLiving.index);
+	}
+	
+	// the number of solutions which are won by playing the best first move and then playing perfectly
+	protected int getWinningLines() {
+		return currentNode.winningLines;
+	}
+	
 	@Override
 	protected Location getExpectedMove() {
 		return expectedMove;
@@ -47,6 +47,15 @@ public class CrunchResult {
          */
         protected BigInteger[][] bigDistribution;
         
+        /**
+         * The counts as gathered by a {@link Cruncher}, which can't go beyond the range of a long. These are turned into
+         * the BigInteger values above when the results are merged.
+         * <p>distribution[square * 9 + 3] holds the same count as bigDistribution[square][3]</p>
+         */
+        protected long goodCandidates;
+        protected long[] tally;
+        protected long[] distribution;
+        
         /**
          * The largest number of candidate solutions within the bigDistribution for this square. This is the maximum number of solutions that can
          * remain if we choose to guess here.
@@ -81,41 +90,45 @@ public class CrunchResult {
             
             result.setWeight(BigInteger.ONE);
             
-            BigInteger[][] distribution;
-            BigInteger[] bigMax;
-            BigInteger[] bigCount;
-            if (cr[0].bigDistribution == null) {
+            // sum the counts as longs and only build the BigIntegers once
+            long[] distribution;
+            if (cr[0].distribution == null) {
                 distribution = null;
             } else {
-                distribution = new BigInteger[result.getSquare().size()][9];
-                bigMax = new BigInteger[result.getSquare().size()];
-                bigCount = new BigInteger[result.getSquare().size()];
-                for (int i = 0; i < result.getSquare().size(); i++) {
-                    for (int j = 0; j < 9; j++) {
-                        distribution[i][j] = BigInteger.ZERO;
+                distribution = new long[result.getSquare().size() * 9];
+            }
+            
+            long[] tally = new long[cr[0].tally.length];
+            long candidates = 0;
+            for (int j=0; j < cr.length; j++) {
+                long weight = cr[j].getWeight().longValueExact();
+                for (int k=0; k < tally.length; k++) {
+                    tally[k] = tally[k] + weight * cr[j].tally[k];
+                }
+                if (distribution != null) {
+                    for (int k=0; k < distribution.length; k++) {
+                        distribution[k] = distribution[k] + weight * cr[j].distribution[k];
                     }
                 }
+                candidates = candidates + weight * cr[j].goodCandidates;
             }
+            result.tally = tally;
+            result.goodCandidates = candidates;
+            result.distribution = distribution;
             
-            BigInteger[] tally = new BigInteger[cr[0].bigTally.length];
-            BigInteger candidates = BigInteger.ZERO;
-            for (int i=0; i < tally.length; i++) {
-                tally[i] = BigInteger.ZERO;
+            result.bigTally = new BigInteger[tally.length];
+            for (int k=0; k < tally.length; k++) {
+                result.bigTally[k] = BigInteger.valueOf(tally[k]);
             }
-            for (int j=0; j < cr.length; j++) { 
-                for (int k=0; k < tally.length; k++) {
-                    tally[k] = tally[k].add(cr[j].getWeight().multiply(cr[j].bigTally[k]));
-                    if (distribution != null) {
-                        for (int l=0; l < 9; l++) {
-                            distribution[k][l] = distribution[k][l].add(cr[j].getWeight().multiply(cr[j].bigDistribution[k][l]));
-                        }
+            result.bigGoodCandidates = BigInteger.valueOf(candidates);
+            if (distribution != null) {
+                result.bigDistribution = new BigInteger[result.getSquare().size()][9];
+                for (int k=0; k < result.getSquare().size(); k++) {
+                    for (int l=0; l < 9; l++) {
+                        result.bigDistribution[k][l] = BigInteger.valueOf(distribution[k * 9 + l]);
                     }
                 }
-                candidates = candidates.add(cr[j].getWeight().multiply(cr[j].bigGoodCandidates));
             }
-            result.bigTally = tally;
-            result.bigGoodCandidates = candidates;
-            result.bigDistribution = distribution;
             
             //result.calculateMinMax();
             
@@ -9,6 +9,7 @@ import Asynchronous.Asynchronous;
 import minesweeper.gamestate.GameStateModel;
 import minesweeper.solver.constructs.WitnessData;
 import minesweeper.solver.iterator.Iterator;
+import minesweeper.solver.utility.Cancellation;
 import minesweeper.structure.Location;
 
 import java.math.BigInteger;
@@ -30,8 +31,21 @@ public class Cruncher implements Asynchronous<CrunchResult> {
     private final boolean[] workRestNotFlags;
     private final boolean[] workRestNotClear;
     
+    // the squares are numbered by their position in the list and a set of squares is held as a bit set of that many bits
+    private final int words;
+    private final long[] sampleMines;     // the squares holding a mine in the current sample
+    private long[][] squareMask;          // the squares adjacent to each square, only built if the solutions are needed
+    private int[] squareFlags;            // the confirmed flags adjacent to each square
+    private WitnessData[][] squareWitnesses;  // the witnesses adjacent to each square
+    
     private CrunchResult result;
     
+    // how often the iterations stop to see if the work has been cancelled
+    private final static int CANCEL_CHECK_INTERVAL = 4096;
+    private final Cancellation cancellation;
+    private volatile boolean stopRequested = false;
+    private boolean cancelled = false;
+    
    
     public Cruncher(BoardState boardState, List<Location> square, List<? extends Location> witness, Iterator iterator, boolean calculateDistribution, BruteForceAnalysisModel bfa) {
         
@@ -41,9 +55,13 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         this.calculateDistribution = calculateDistribution;
         this.bfa = bfa;
         this.boardState = boardState;
+        this.cancellation = boardState.getSolver().getCancellation();
         
         workRestNotFlags = new boolean[witness.size()];
         workRestNotClear = new boolean[witness.size()];
+        
+        words = (square.size() + 63) >>> 6;
+        sampleMines = new long[words];
        
     }
     
@@ -59,7 +77,12 @@ public class Cruncher implements Asynchronous<CrunchResult> {
 
     @Override
     public void requestStop() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        stopRequested = true;
+    }
+    
+    // true if the iterations were stopped before they were all checked, so the result is incomplete
+    protected boolean isCancelled() {
+        return cancelled;
     }
 
 
@@ -73,20 +96,13 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         
         //display("crunching " + iterator.numberBalls + " Mines in " + square.length + " Squares with " + witness.length + " witnesses");
 
-        // the distribution is the number of times a square reveals as the number 0-8
-        BigInteger[][] bigDistribution = null;
+        // the distribution is the number of times a square reveals as the number 0-8, held as 9 values for each square
+        long[] distribution = null;
         if (calculateDistribution) {
-            bigDistribution = new BigInteger[square.size()][9];
-            for (int i=0; i < square.size(); i++) {
-                for (int j=0; j < 9; j++) {
-                    bigDistribution[i][j] = BigInteger.ZERO;
-                }
-            }
+            distribution = new long[square.size() * 9];
         }
 
 
-        BigInteger bign = BigInteger.ZERO;
-
         // determine the witness type
         int[] witnessGood1 = generateWitnessType(witness, square);
         
@@ -100,9 +116,39 @@ public class Cruncher implements Asynchronous<CrunchResult> {
             d.witnessRestFlag = true;
             d.currentFlags = boardState.countAdjacentConfirmedFlags(d.location);
             d.alwaysSatisfied = iterator.witnessAlwaysSatisfied(d.location);
+            d.witnessValue = boardState.getWitnessValue(d.location);
+            d.adjacentMask = adjacentMask(d.location, square);
             //display("Witness " + i + " location " + d.location.display() + " current flags = " + d.currentFlags + " good witness = " + d.witnessGood + " Satisified = " + d.alwaysSatisfied);
             witnessData[i] = d;
         }
+        
+        // the witnesses next to each square, so the mines around each witness can be kept up to date as the sample changes
+        squareWitnesses = new WitnessData[square.size()][];
+        for (int i=0; i < square.size(); i++) {
+            int count = 0;
+            for (WitnessData d: witnessData) {
+                if ((d.adjacentMask[i >>> 6] & (1L << i)) != 0) {
+                    count++;
+                }
+            }
+            squareWitnesses[i] = new WitnessData[count];
+            count = 0;
+            for (WitnessData d: witnessData) {
+                if ((d.adjacentMask[i >>> 6] & (1L << i)) != 0) {
+                    squareWitnesses[i][count++] = d;
+                }
+            }
+        }
+        
+        // if we are going to pass the solutions on then we need to know what each square would reveal
+        if (bfa != null) {
+            squareMask = new long[square.size()][];
+            squareFlags = new int[square.size()];
+            for (int i=0; i < square.size(); i++) {
+                squareMask[i] = adjacentMask(square.get(i), square);
+                squareFlags[i] = boardState.countAdjacentConfirmedFlags(square.get(i));
+            }
+        }
  
         /*
         for (int i=0; i < square.length; i++) {
@@ -112,12 +158,23 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         
         int[] sample = iterator.getSample();
 
-        int[] tally = new int[square.size()];
-        int candidates = 0;
+        long[] tally = new long[square.size()];
+        long candidates = 0;
+        int untilCheck = CANCEL_CHECK_INTERVAL;
         
         while (sample != null) {
+            
+            if (--untilCheck == 0) {
+                untilCheck = CANCEL_CHECK_INTERVAL;
+                if (stopRequested || cancellation.isCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+            }
            
-            if (checkSample(sample, square, witnessData, bigDistribution, bfa)) {
+            updateSampleMines(sample, witnessData);
+            
+            if (checkSample(sample, square, witnessData, distribution, bfa)) {
                 for (int i=0; i < sample.length; i++) {
                 	tally[sample[i]]++;
                 }   
@@ -128,25 +185,17 @@ public class Cruncher implements Asynchronous<CrunchResult> {
             
         }
         
-        BigInteger[] bigTally = new BigInteger[square.size()];
-        for (int i = 0; i < bigTally.length; i++) {
-            bigTally[i] = BigInteger.valueOf(tally[i]);
-            
-        }
-        
-        bign = BigInteger.valueOf(candidates);
-        
         // store all the information we have gathered into this object for
-        // later analysis
+        // later analysis. The BigInteger values are built when the results are merged.
         CrunchResult output = new CrunchResult();
         output.setSquare(square);
-        output.bigDistribution = bigDistribution;
+        output.distribution = distribution;
         
      
         //output.hookMines = null;
         output.originalNumMines = iterator.getBalls();
-        output.bigGoodCandidates = bign;
-        output.bigTally = bigTally;
+        output.goodCandidates = candidates;
+        output.tally = tally;
         
         // return data on the witnesses
         output.witness = new Location[witnessData.length];
@@ -166,7 +215,7 @@ public class Cruncher implements Asynchronous<CrunchResult> {
     } 
     
     // this checks whether the positions of the mines are a valid candidate solution
-    protected boolean checkSample(final int[] sample, final List<Location> square, WitnessData[] witnessData, BigInteger[][] bigDistribution, BruteForceAnalysisModel bfa) {
+    protected boolean checkSample(final int[] sample, final List<Location> square, WitnessData[] witnessData, long[] distribution, BruteForceAnalysisModel bfa) {
         
         /*
         String s= "";
@@ -183,26 +232,15 @@ public class Cruncher implements Asynchronous<CrunchResult> {
     		workRestNotClear[i] = false;
     	}
         
-        // get the location of the mines
-        Location[] mine = new Location[sample.length];
-        for (int i=0; i < sample.length; i++) {
-            mine[i] = square.get(sample[i]);
-        }
-        
         for (int i=0; i < witnessData.length; i++) {
             
             if (!witnessData[i].alwaysSatisfied) {
                 int flags1 = witnessData[i].currentFlags;
-                int flags2 = 0;
 
-                // count how many candidate mines are next to this witness
-                for (int j = 0; j < mine.length; j++) {
-                    if (mine[j].isAdjacent(witnessData[i].location)) {
-                        flags2++;
-                    }
-                }
+                // how many candidate mines are next to this witness
+                int flags2 = witnessData[i].sampleMines;
 
-                int flags3 = boardState.getWitnessValue(witnessData[i].location);
+                int flags3 = witnessData[i].witnessValue;
                 //int flags3 = board[witnessData[i].location.x][witnessData[i].location.y];
 
                 // if the candidate solution puts more flags around the witness
@@ -255,26 +293,15 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         	
             for (int i=0; i < square.size(); i++) {
                 
-                boolean isMine = false;
-                for (int j=0; j < sample.length; j++) {
-                    if (i == sample[j]) {
-                        isMine = true;
-                        break;
-                    }
-                }
+                boolean isMine = (sampleMines[i >>> 6] & (1L << i)) != 0;
                 
                 // if we are a mine then it doesn't matter how many mines surround us
                 if (!isMine) {
-                    byte flags2 = (byte) boardState.countAdjacentConfirmedFlags(square.get(i));
                     // count how many candidate mines are next to this square
-                    for (Location mine1 : mine) {
-                        if (mine1.isAdjacent(square.get(i))) {
-                            flags2++;
-                        }
-                    }            
+                    byte flags2 = (byte) (squareFlags[i] + countMines(squareMask[i]));
                     solution[i] = flags2;
-                    if (bigDistribution != null) {
-                    	bigDistribution[i][flags2] = bigDistribution[i][flags2].add(BigInteger.ONE);
+                    if (distribution != null) {
+                    	distribution[i * 9 + flags2]++;
                     }
 
                 } else {
@@ -291,6 +318,71 @@ public class Cruncher implements Asynchronous<CrunchResult> {
         
     }
     
+    // bring the mines in the sample and the mines around each witness up to date. If the iterator
+    // knows which squares have changed only those are looked at, otherwise start again.
+    private void updateSampleMines(final int[] sample, WitnessData[] witnessData) {
+        
+        int changes = iterator.getChangeCount();
+        
+        if (changes == -1) {
+            for (int i=0; i < words; i++) {
+                sampleMines[i] = 0;
+            }
+            for (WitnessData d: witnessData) {
+                d.sampleMines = 0;
+            }
+            for (int i=0; i < sample.length; i++) {
+                addMine(sample[i]);
+            }
+        } else {
+            int[] removed = iterator.getRemovedSquares();
+            int[] added = iterator.getAddedSquares();
+            for (int i=0; i < changes; i++) {
+                removeMine(removed[i]);
+                addMine(added[i]);
+            }
+        }
+        
+    }
+    
+    private void addMine(int i) {
+        sampleMines[i >>> 6] |= 1L << i;
+        for (WitnessData d: squareWitnesses[i]) {
+            d.sampleMines++;
+        }
+    }
+    
+    private void removeMine(int i) {
+        sampleMines[i >>> 6] &= ~(1L << i);
+        for (WitnessData d: squareWitnesses[i]) {
+            d.sampleMines--;
+        }
+    }
+    
+    // the number of mines in the current sample which are in the set of squares
+    private int countMines(long[] mask) {
+        
+        int result = 0;
+        for (int i=0; i < words; i++) {
+            result = result + Long.bitCount(mask[i] & sampleMines[i]);
+        }
+        
+        return result;
+    }
+    
+    // a bit set of the squares which are adjacent to this location
+    private long[] adjacentMask(Location location, List<Location> square) {
+        
+        long[] mask = new long[words];
+        for (int i=0; i < square.size(); i++) {
+            if (square.get(i).isAdjacent(location)) {
+                mask[i >>> 6] |= 1L << i;
+            }
+        }
+        
+        return mask;
+    }
+    
     protected BruteForceAnalysisModel getBFA() {
     	return bfa;
     }
@@ -0,0 +1,437 @@
+package minesweeper.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minesweeper.structure.Location;
+
+/**
+ * Holds the best move and the chance of solving small isolated edges, worked out in advance using the brute force deep analysis.
+ *
+ * An edge is described by a window one tile larger than the edge in each direction. Each cell in the window is either a tile on the edge,
+ * a known mine next to the edge, a witness holding the number of mines it still needs or nothing of interest. The window is turned and
+ * reflected into whichever of its 8 orientations encodes smallest, so an edge is found however it appears on the board.
+ *
+ * The file is a header followed by the entries sorted by the hash of their window. It is memory mapped and searched with a binary chop.
+ * The tablebases are built by EndgameTablebaseGenerator.
+ *
+ * @author David
+ *
+ */
+public class EndgameTablebase {
+
+	private static final int MAGIC = 0x4D535442;     // "MSTB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;       // magic, version and the number of entries
+	private static final int ENTRY_SIZE = 18;        // hash, winning lines, solutions, move x and move y
+
+	protected static final int MAX_CELLS = 64;       // the largest window which can be held
+
+	// what a cell in the window holds
+	protected static final byte NOTHING = 0;
+	protected static final byte TILE = 1;
+	protected static final byte MINE = 2;
+	protected static final byte WITNESS = 3;         // a witness which still needs n mines is WITNESS + n
+
+	private static final long HASH_SEED = 0x6A09E667F3BCC908L;   // fixed, so the hashes don't depend on the solver settings
+
+	private static final Map<String, EndgameTablebase> OPENED = new HashMap<>();
+
+	/**
+	 * A small isolated edge, either as found on the board or in its canonical orientation
+	 */
+	protected static class Pattern {
+
+		protected final int width;
+		protected final int height;
+		protected final byte[] cells;    // y * width + x
+		protected final int mines;       // the number of mines on the edge's tiles
+
+		private int originX;             // where the window starts on the board
+		private int originY;
+
+		protected Pattern(int width, int height, byte[] cells, int mines) {
+			this.width = width;
+			this.height = height;
+			this.cells = cells;
+			this.mines = mines;
+		}
+
+		protected byte get(int x, int y) {
+			return cells[y * width + x];
+		}
+
+		/**
+		 * The pattern turned and reflected by one of the 8 transforms
+		 */
+		protected Pattern transform(int t) {
+
+			int newWidth = width;
+			int newHeight = height;
+			if ((t & 1) == 1) {
+				newWidth = height;
+				newHeight = width;
+			}
+
+			byte[] result = new byte[cells.length];
+			for (int x=0; x < width; x++) {
+				for (int y=0; y < height; y++) {
+					int[] to = transform(t, x, y, width, height);
+					result[to[1] * newWidth + to[0]] = cells[y * width + x];
+				}
+			}
+
+			return new Pattern(newWidth, newHeight, result, mines);
+		}
+
+		/**
+		 * Where a cell ends up when the window is transformed. Transforms 4 to 7 reflect the window and then each transform
+		 * turns it clockwise (t mod 4) times.
+		 */
+		protected static int[] transform(int t, int x, int y, int width, int height) {
+
+			if (t >= 4) {
+				x = width - 1 - x;
+			}
+
+			for (int i=0; i < (t & 3); i++) {
+				int turned = height - 1 - y;
+				y = x;
+				x = turned;
+				int swap = width;
+				width = height;
+				height = swap;
+			}
+
+			return new int[] {x, y};
+		}
+
+		protected byte[] encode() {
+
+			byte[] result = new byte[cells.length + 3];
+			result[0] = (byte) mines;
+			result[1] = (byte) width;
+			result[2] = (byte) height;
+			System.arraycopy(cells, 0, result, 3, cells.length);
+
+			return result;
+		}
+
+		/**
+		 * The transform which puts this pattern into its canonical orientation, the one which encodes smallest
+		 */
+		protected int canonicalTransform() {
+
+			byte[] best = null;
+			int bestTransform = 0;
+
+			for (int t=0; t < 8; t++) {
+				byte[] encoded = transform(t).encode();
+				if (best == null || compare(encoded, best) < 0) {
+					best = encoded;
+					bestTransform = t;
+				}
+			}
+
+			return bestTransform;
+		}
+
+		protected long hash() {
+
+			long hash = HASH_SEED;
+			byte[] encoded = encode();
+			for (int i=0; i < encoded.length; i++) {
+				hash = ProbabilityLineTable.zobristKey(hash, i, encoded[i]);
+			}
+
+			return hash;
+		}
+
+	}
+
+	/**
+	 * The move to play on an edge found in the tablebase
+	 */
+	protected static class Result {
+
+		protected final Location move;
+		protected final int winningLines;
+		protected final int solutions;
+
+		private Result(Location move, int winningLines, int solutions) {
+			this.move = move;
+			this.winningLines = winningLines;
+			this.solutions = solutions;
+		}
+
+		// the chance of solving the edge when playing perfectly
+		protected BigDecimal getProbability() {
+			return BigDecimal.valueOf(winningLines).divide(BigDecimal.valueOf(solutions), Solver.DP, RoundingMode.HALF_UP);
+		}
+
+	}
+
+	/**
+	 * An entry waiting to be written to a tablebase
+	 */
+	protected static class Entry {
+
+		protected final long hash;
+		protected final int winningLines;
+		protected final int solutions;
+		protected final int moveX;       // the move in the canonical orientation of the window
+		protected final int moveY;
+
+		protected Entry(long hash, int winningLines, int solutions, int moveX, int moveY) {
+			this.hash = hash;
+			this.winningLines = winningLines;
+			this.solutions = solutions;
+			this.moveX = moveX;
+			this.moveY = moveY;
+		}
+
+	}
+
+	private final MappedByteBuffer buffer;
+	private final int count;
+
+	private EndgameTablebase(MappedByteBuffer buffer) throws IOException {
+
+		this.buffer = buffer;
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an endgame tablebase");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Endgame tablebase version " + buffer.getInt(4) + " is not supported");
+		}
+
+		this.count = buffer.getInt(8);
+
+		if (buffer.capacity() != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+			throw new IOException("Endgame tablebase is the wrong size for " + count + " entries");
+		}
+	}
+
+	/**
+	 * Open a tablebase, each file is only mapped once however many solvers use it
+	 */
+	protected static synchronized EndgameTablebase open(String file) throws IOException {
+
+		EndgameTablebase tablebase = OPENED.get(file);
+
+		if (tablebase == null) {
+			try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+				tablebase = new EndgameTablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+			OPENED.put(file, tablebase);
+		}
+
+		return tablebase;
+	}
+
+	protected int size() {
+		return count;
+	}
+
+	/**
+	 * Look for the isolated edge made up of these tiles with this many mines on them. Returns null if it isn't in the tablebase.
+	 */
+	protected Result lookup(BoardState boardState, List<? extends Location> tiles, int mines) {
+
+		Pattern pattern = fromBoard(boardState, tiles, mines);
+		if (pattern == null) {
+			return null;
+		}
+
+		int t = pattern.canonicalTransform();
+		int entry = find(pattern.transform(t).hash());
+		if (entry < 0) {
+			return null;
+		}
+
+		int position = HEADER_SIZE + entry * ENTRY_SIZE;
+		int winningLines = buffer.getInt(position + 8);
+		int solutions = buffer.getInt(position + 12);
+		int moveX = buffer.get(position + 16);
+		int moveY = buffer.get(position + 17);
+
+		// find the tile which the transform moved to where the move is held
+		for (int x=0; x < pattern.width; x++) {
+			for (int y=0; y < pattern.height; y++) {
+				int[] to = Pattern.transform(t, x, y, pattern.width, pattern.height);
+				if (to[0] == moveX && to[1] == moveY && pattern.get(x, y) == TILE) {
+					return new Result(new Location(pattern.originX + x, pattern.originY + y), winningLines, solutions);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	// binary chop for the entry with this hash, returns -1 if there isn't one
+	private int find(long hash) {
+
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = buffer.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+			if (value < hash) {
+				low = mid + 1;
+			} else if (value > hash) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Describe the isolated edge made up of these tiles. Returns null if the window would be too large or the tiles
+	 * aren't an isolated edge.
+	 */
+	protected static Pattern fromBoard(BoardState boardState, List<? extends Location> tiles, int mines) {
+
+		if (tiles.isEmpty()) {
+			return null;
+		}
+
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		Set<Location> tileSet = new HashSet<>();
+		for (Location tile: tiles) {
+			minX = Math.min(minX, tile.x);
+			minY = Math.min(minY, tile.y);
+			maxX = Math.max(maxX, tile.x);
+			maxY = Math.max(maxY, tile.y);
+			tileSet.add(new Location(tile.x, tile.y));
+		}
+
+		int width = maxX - minX + 3;
+		int height = maxY - minY + 3;
+		if (width * height > MAX_CELLS) {
+			return null;
+		}
+
+		byte[] cells = new byte[width * height];
+
+		for (int i=0; i < width; i++) {
+			for (int j=0; j < height; j++) {
+
+				int x = minX - 1 + i;
+				int y = minY - 1 + j;
+
+				byte cell;
+				if (x < 0 || y < 0 || x >= boardState.getGameWidth() || y >= boardState.getGameHeight()) {
+					cell = NOTHING;
+				} else if (tileSet.contains(new Location(x, y))) {
+					cell = TILE;
+				} else if (!isAdjacent(x, y, tileSet)) {
+					cell = NOTHING;
+				} else if (boardState.isConfirmedFlag(x, y)) {
+					cell = MINE;
+				} else if (boardState.isRevealed(x, y)) {
+					int needs = boardState.getWitnessValue(x, y) - boardState.countAdjacentConfirmedFlags(x, y);
+					if (needs < 0 || needs > 8) {
+						return null;
+					}
+					// the witness mustn't depend on anything other than the edge
+					for (Location l: boardState.getAdjacentUnrevealedSquares(new Location(x, y))) {
+						if (!tileSet.contains(l)) {
+							return null;
+						}
+					}
+					cell = (byte) (WITNESS + needs);
+				} else {
+					return null;   // an unknown tile next to the edge, so it isn't isolated
+				}
+
+				cells[j * width + i] = cell;
+			}
+		}
+
+		Pattern pattern = new Pattern(width, height, cells, mines);
+		pattern.originX = minX - 1;
+		pattern.originY = minY - 1;
+
+		return pattern;
+	}
+
+	private static boolean isAdjacent(int x, int y, Set<Location> tiles) {
+
+		for (int dx=-1; dx <= 1; dx++) {
+			for (int dy=-1; dy <= 1; dy++) {
+				if ((dx != 0 || dy != 0) && tiles.contains(new Location(x + dx, y + dy))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Write a tablebase holding these entries
+	 */
+	protected static void write(String file, List<Entry> entries) throws IOException {
+
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return Long.compare(o1.hash, o2.hash);
+			}
+		});
+
+		Path path = Paths.get(file);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+
+			for (Entry entry: entries) {
+				out.writeLong(entry.hash);
+				out.writeInt(entry.winningLines);
+				out.writeInt(entry.solutions);
+				out.writeByte(entry.moveX);
+				out.writeByte(entry.moveY);
+			}
+		}
+
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+
+		int length = Math.min(a.length, b.length);
+		for (int i=0; i < length; i++) {
+			if (a[i] != b[i]) {
+				return a[i] - b[i];
+			}
+		}
+
+		return a.length - b.length;
+	}
+
+}
@@ -0,0 +1,458 @@
+package minesweeper.solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minesweeper.gamestate.GameFactory;
+import minesweeper.gamestate.GameStateModel;
+import minesweeper.settings.GameSettings;
+import minesweeper.settings.GameType;
+import minesweeper.solver.settings.SettingsFactory;
+import minesweeper.solver.settings.SettingsFactory.Setting;
+import minesweeper.structure.Location;
+
+/**
+ * Builds an endgame tablebase offline.
+ *
+ * Every shape of up to maxTiles tiles is surrounded by witnesses and up to maxKnownMines known mines, in open board, against
+ * an edge of the board and in a corner. Every way of placing mines on the tiles gives the witnesses their values. Each distinct
+ * edge, in its canonical orientation, is then solved with the brute force deep analysis.
+ *
+ * Edges which the solver would never need to look up aren't stored, those with only one solution or with a tile which is
+ * certainly safe.
+ *
+ * Usage: EndgameTablebaseGenerator file [maxTiles] [maxKnownMines]
+ *
+ * @author David
+ *
+ */
+public class EndgameTablebaseGenerator {
+
+	// the edges of the board a shape can be against, none, the top edge or the top and left edges
+	private static final int OPEN = 0;
+	private static final int EDGE = 1;
+	private static final int CORNER = 2;
+
+	private final int maxTiles;
+	private final int maxKnownMines;
+
+	private final Solver solver;
+
+	private final Set<ByteBuffer> seen = new HashSet<>();
+	private final Map<Long, EndgameTablebase.Entry> entries = new LinkedHashMap<>();
+
+	private int collisions = 0;
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.out.println("Usage: EndgameTablebaseGenerator file [maxTiles] [maxKnownMines]");
+			return;
+		}
+
+		int maxTiles = 5;
+		if (args.length > 1) {
+			maxTiles = Integer.parseInt(args[1]);
+		}
+
+		int maxKnownMines = 2;
+		if (args.length > 2) {
+			maxKnownMines = Integer.parseInt(args[2]);
+		}
+
+		long start = System.currentTimeMillis();
+
+		EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(maxTiles, maxKnownMines);
+		generator.generate();
+
+		List<EndgameTablebase.Entry> stored = new ArrayList<>();
+		for (EndgameTablebase.Entry entry: generator.entries.values()) {
+			if (entry != null) {
+				stored.add(entry);
+			}
+		}
+		EndgameTablebase.write(args[0], stored);
+
+		System.out.println(generator.seen.size() + " distinct edges, " + stored.size() + " stored, " + generator.collisions + " hash collisions dropped");
+		System.out.println("Took " + (System.currentTimeMillis() - start) + " milliseconds");
+
+	}
+
+	public EndgameTablebaseGenerator(int maxTiles, int maxKnownMines) {
+
+		this.maxTiles = maxTiles;
+		this.maxKnownMines = maxKnownMines;
+
+		// the analysis needs a solver for its settings, any game will do
+		GameStateModel game = GameFactory.create(GameType.STANDARD, GameSettings.BEGINNER, 0);
+		this.solver = new Solver(game, SettingsFactory.GetSettings(Setting.LARGE_ANALYSIS), false);
+
+	}
+
+	public void generate() {
+
+		for (List<int[]> shape: buildShapes()) {
+			for (int border=OPEN; border <= CORNER; border++) {
+				addShape(shape, border);
+			}
+		}
+
+	}
+
+	/**
+	 * Every shape of up to maxTiles tiles, up to translation. Each tile touches another, since
+	 * edges whose tiles are spread out are almost always solved by their witnesses.
+	 */
+	private List<List<int[]>> buildShapes() {
+
+		List<List<int[]>> result = new ArrayList<>();
+		Set<String> found = new HashSet<>();
+
+		List<List<int[]>> current = new ArrayList<>();
+		List<int[]> single = new ArrayList<>();
+		single.add(new int[] {0, 0});
+		current.add(single);
+
+		for (int size=1; size <= maxTiles; size++) {
+
+			result.addAll(current);
+
+			if (size == maxTiles) {
+				break;
+			}
+
+			List<List<int[]>> next = new ArrayList<>();
+			for (List<int[]> shape: current) {
+				for (int[] tile: shape) {
+					for (int dx=-1; dx <= 1; dx++) {
+						for (int dy=-1; dy <= 1; dy++) {
+							int[] added = new int[] {tile[0] + dx, tile[1] + dy};
+							if (contains(shape, added[0], added[1])) {
+								continue;
+							}
+							List<int[]> grown = new ArrayList<>(shape);
+							grown.add(added);
+							grown = normalise(grown);
+							if (found.add(describe(grown))) {
+								next.add(grown);
+							}
+						}
+					}
+				}
+			}
+			current = next;
+		}
+
+		return result;
+	}
+
+	// move the shape so its smallest x and y are zero and sort the tiles
+	private List<int[]> normalise(List<int[]> shape) {
+
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		for (int[] tile: shape) {
+			minX = Math.min(minX, tile[0]);
+			minY = Math.min(minY, tile[1]);
+		}
+
+		List<int[]> result = new ArrayList<>();
+		for (int[] tile: shape) {
+			result.add(new int[] {tile[0] - minX, tile[1] - minY});
+		}
+
+		Collections.sort(result, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				if (a[0] != b[0]) {
+					return a[0] - b[0];
+				}
+				return a[1] - b[1];
+			}
+		});
+
+		return result;
+	}
+
+	private String describe(List<int[]> shape) {
+		StringBuilder sb = new StringBuilder();
+		for (int[] tile: shape) {
+			sb.append(tile[0]).append(',').append(tile[1]).append(';');
+		}
+		return sb.toString();
+	}
+
+	private boolean contains(List<int[]> shape, int x, int y) {
+		for (int[] tile: shape) {
+			if (tile[0] == x && tile[1] == y) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Try every set of known mines and every placement of mines on the tiles around this shape
+	 */
+	private void addShape(List<int[]> shape, int border) {
+
+		// a shape against the edge of the board must touch it
+		if (!touches(shape, border)) {
+			return;
+		}
+
+		int width = 0;
+		int height = 0;
+		for (int[] tile: shape) {
+			width = Math.max(width, tile[0] + 3);
+			height = Math.max(height, tile[1] + 3);
+		}
+
+		if (width * height > EndgameTablebase.MAX_CELLS) {
+			return;
+		}
+
+		// the window is one larger than the shape, so the tiles are offset by 1
+		boolean[] isTile = new boolean[width * height];
+		for (int[] tile: shape) {
+			isTile[(tile[1] + 1) * width + tile[0] + 1] = true;
+		}
+
+		// the cells next to the shape which are on the board can hold a witness or a known mine
+		List<Integer> ring = new ArrayList<>();
+		for (int x=0; x < width; x++) {
+			for (int y=0; y < height; y++) {
+				boolean offBoard = (y == 0 && border != OPEN) || (x == 0 && border == CORNER);
+				int cell = y * width + x;
+				if (!offBoard && !isTile[cell] && isAdjacent(isTile, width, height, x, y)) {
+					ring.add(cell);
+				}
+			}
+		}
+
+		int[] known = new int[maxKnownMines];
+		addKnownMines(shape, width, height, isTile, ring, known, 0, 0);
+
+	}
+
+	private boolean touches(List<int[]> shape, int border) {
+
+		boolean top = false;
+		boolean left = false;
+		for (int[] tile: shape) {
+			if (tile[1] == 0) {
+				top = true;
+			}
+			if (tile[0] == 0) {
+				left = true;
+			}
+		}
+
+		if (border == CORNER) {
+			return top && left;
+		} else if (border == EDGE) {
+			return top;
+		} else {
+			return true;
+		}
+	}
+
+	// choose up to maxKnownMines of the ring to be known mines, in increasing order of position in the ring
+	private void addKnownMines(List<int[]> shape, int width, int height, boolean[] isTile, List<Integer> ring, int[] known, int count, int from) {
+
+		addLayouts(shape, width, height, isTile, ring, Arrays.copyOf(known, count));
+
+		if (count == known.length) {
+			return;
+		}
+
+		for (int i=from; i < ring.size(); i++) {
+			known[count] = ring.get(i);
+			addKnownMines(shape, width, height, isTile, ring, known, count + 1, i + 1);
+		}
+
+	}
+
+	// every placement of mines on the tiles gives the witnesses their values
+	private void addLayouts(List<int[]> shape, int width, int height, boolean[] isTile, List<Integer> ring, int[] known) {
+
+		int tiles = shape.size();
+
+		for (int layout=1; layout < (1 << tiles) - 1; layout++) {
+
+			byte[] cells = new byte[width * height];
+
+			boolean[] isMine = new boolean[width * height];
+			for (int i=0; i < tiles; i++) {
+				int[] tile = shape.get(i);
+				int cell = (tile[1] + 1) * width + tile[0] + 1;
+				cells[cell] = EndgameTablebase.TILE;
+				if ((layout & (1 << i)) != 0) {
+					isMine[cell] = true;
+				}
+			}
+
+			for (int cell: known) {
+				cells[cell] = EndgameTablebase.MINE;
+			}
+
+			for (int cell: ring) {
+				if (cells[cell] == EndgameTablebase.NOTHING) {
+					int needs = countAdjacent(isMine, width, height, cell % width, cell / width);
+					cells[cell] = (byte) (EndgameTablebase.WITNESS + needs);
+				}
+			}
+
+			// off the board cells are left as nothing
+			EndgameTablebase.Pattern pattern = new EndgameTablebase.Pattern(width, height, cells, Integer.bitCount(layout));
+
+			addPattern(pattern);
+		}
+
+	}
+
+	private void addPattern(EndgameTablebase.Pattern found) {
+
+		EndgameTablebase.Pattern pattern = found.transform(found.canonicalTransform());
+
+		if (!seen.add(ByteBuffer.wrap(pattern.encode()))) {
+			return;
+		}
+
+		EndgameTablebase.Entry entry = solve(pattern);
+		if (entry == null) {
+			return;
+		}
+
+		if (entries.containsKey(entry.hash)) {
+			// two different edges with the same hash can't be told apart, so don't hold either
+			collisions++;
+			entries.put(entry.hash, null);
+			return;
+		}
+
+		entries.put(entry.hash, entry);
+
+	}
+
+	/**
+	 * Run the brute force deep analysis on the edge, returns null if the edge doesn't need storing
+	 */
+	private EndgameTablebase.Entry solve(EndgameTablebase.Pattern pattern) {
+
+		List<Location> tiles = new ArrayList<>();
+		for (int y=0; y < pattern.height; y++) {
+			for (int x=0; x < pattern.width; x++) {
+				if (pattern.get(x, y) == EndgameTablebase.TILE) {
+					tiles.add(new Location(x, y));
+				}
+			}
+		}
+
+		List<byte[]> solutions = new ArrayList<>();
+		int everMine = 0;
+
+		for (int layout=0; layout < (1 << tiles.size()); layout++) {
+
+			if (Integer.bitCount(layout) != pattern.mines) {
+				continue;
+			}
+
+			byte[] solution = buildSolution(pattern, tiles, layout);
+			if (solution != null) {
+				solutions.add(solution);
+				everMine = everMine | layout;
+			}
+		}
+
+		// a tile which is never a mine would be played by the solver long before it needed the tablebase
+		if (solutions.size() < 2 || everMine != (1 << tiles.size()) - 1) {
+			return null;
+		}
+
+		BruteForceAnalysis bfa = new BruteForceAnalysis(solver, tiles, solutions.size(), "Tablebase", null);
+		for (byte[] solution: solutions) {
+			bfa.addSolution(solution);
+		}
+		bfa.process();
+
+		Location move = bfa.getBestFirstMove();
+		if (!bfa.isComplete() || move == null) {
+			return null;
+		}
+
+		return new EndgameTablebase.Entry(pattern.hash(), bfa.getWinningLines(), solutions.size(), move.x, move.y);
+	}
+
+	// the value each tile reveals with these tiles as mines, or null if a witness doesn't agree with them
+	private byte[] buildSolution(EndgameTablebase.Pattern pattern, List<Location> tiles, int layout) {
+
+		boolean[] isMine = new boolean[pattern.cells.length];
+		for (int i=0; i < tiles.size(); i++) {
+			if ((layout & (1 << i)) != 0) {
+				isMine[tiles.get(i).y * pattern.width + tiles.get(i).x] = true;
+			}
+		}
+
+		for (int x=0; x < pattern.width; x++) {
+			for (int y=0; y < pattern.height; y++) {
+				byte cell = pattern.get(x, y);
+				if (cell >= EndgameTablebase.WITNESS && countAdjacent(isMine, pattern.width, pattern.height, x, y) != cell - EndgameTablebase.WITNESS) {
+					return null;
+				}
+			}
+		}
+
+		byte[] solution = new byte[tiles.size()];
+		for (int i=0; i < tiles.size(); i++) {
+			Location tile = tiles.get(i);
+			if (isMine[tile.y * pattern.width + tile.x]) {
+				solution[i] = GameStateModel.MINE;
+			} else {
+				int value = countAdjacent(isMine, pattern.width, pattern.height, tile.x, tile.y);
+				for (int dx=-1; dx <= 1; dx++) {
+					for (int dy=-1; dy <= 1; dy++) {
+						int x = tile.x + dx;
+						int y = tile.y + dy;
+						if (x >= 0 && y >= 0 && x < pattern.width && y < pattern.height && pattern.get(x, y) == EndgameTablebase.MINE) {
+							value++;
+						}
+					}
+				}
+				solution[i] = (byte) value;
+			}
+		}
+
+		return solution;
+	}
+
+	private static int countAdjacent(boolean[] isMine, int width, int height, int x, int y) {
+
+		int count = 0;
+		for (int dx=-1; dx <= 1; dx++) {
+			for (int dy=-1; dy <= 1; dy++) {
+				int i = x + dx;
+				int j = y + dy;
+				if ((dx != 0 || dy != 0) && i >= 0 && j >= 0 && i < width && j < height && isMine[j * width + i]) {
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private static boolean isAdjacent(boolean[] isTile, int width, int height, int x, int y) {
+		return countAdjacent(isTile, width, height, x, y) > 0;
+	}
+
+}
@@ -2,13 +2,15 @@ package minesweeper.solver;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import minesweeper.gamestate.MoveMethod;
 import minesweeper.solver.constructs.CandidateLocation;
@@ -27,6 +29,38 @@ public class EvaluateLocations {
 
 	private final static int[][] OFFSETS_ALL = {{2,-2}, {2,-1}, {2,0}, {2,1}, {2,2}, {-2,-2}, {-2,-1}, {-2,0}, {-2,1}, {-2,2}, {-1,2}, {0,2}, {1,2}, {-1,-2}, {0,-2}, {1,-2}};
 	
+	// evaluating fewer tiles than this isn't worth sharing out across threads
+	private final static int PARALLEL_MINIMUM = 4;
+	
+	// evaluates a tile on its own snapshot of the board, so it can run at the same time as the others
+	private class EvaluateTask implements Callable<EvaluatedLocation> {
+		
+		private final CandidateLocation tile;
+		private boolean skipped = false;   // true if the tile couldn't beat the best already merged, so it wasn't evaluated
+		
+		private EvaluateTask(CandidateLocation tile) {
+			this.tile = tile;
+		}
+		
+		@Override
+		public EvaluatedLocation call() {
+			
+			if (solver.getCancellation().isCancelled()) {
+				return null;
+			}
+			
+			// the best only rises as the results are merged, so a tile which can't beat it now would be ignored by the merge too
+			BigDecimal weighting = mergedWeighting;
+			if (weighting != null && tile.getProbability().multiply(Solver.PROGRESS_MULTIPLIER).compareTo(weighting) <= 0) {
+				skipped = true;
+				return null;
+			}
+			
+			return doFullEvaluateTile(boardState.snapshot(), tile);
+		}
+		
+	}
+	
 	private final BoardState boardState;
 	private final WitnessWeb wholeEdge;
 	private final ProbabilityEngineModel pe;
@@ -34,6 +68,7 @@ public class EvaluateLocations {
 
 	private List<EvaluatedLocation> evaluated = new ArrayList<>();
 	EvaluatedLocation best;
+	private volatile BigDecimal mergedWeighting;   // the weighting of the best tile merged so far, read by the tasks still to start
 
 	public EvaluateLocations(Solver solver, BoardState boardState, WitnessWeb wholeEdge, ProbabilityEngineModel pe) {
 
@@ -119,8 +154,63 @@ public class EvaluateLocations {
 	 */
 	public void evaluateLocations(Collection<? extends CandidateLocation> tiles) {
 
-		for (CandidateLocation tile: tiles) {
-			evaluateLocation(tile);
+		List<CandidateLocation> ordered = new ArrayList<>(tiles);
+		
+		// not worth the overhead so stay on this thread
+		if (Solver.CORES == 1 || ordered.size() < PARALLEL_MINIMUM) {
+			for (CandidateLocation tile: ordered) {
+				// if we have run out of time then go with what we have evaluated so far
+				if (solver.getCancellation().isCancelled()) {
+					boardState.display("Evaluation of the locations was cancelled");
+					break;
+				}
+				evaluateLocation(tile);
+			}
+			return;
+		}
+		
+		boardState.display("Evaluating " + ordered.size() + " locations in parallel");
+		
+		mergedWeighting = (best == null) ? null : best.getWeighting();
+		
+		List<EvaluateTask> evaluations = new ArrayList<>();
+		List<ForkJoinTask<EvaluatedLocation>> tasks = new ArrayList<>();
+		for (CandidateLocation tile: ordered) {
+			EvaluateTask evaluation = new EvaluateTask(tile);
+			evaluations.add(evaluation);
+			tasks.add(ForkJoinPool.commonPool().submit(evaluation));
+		}
+		
+		// take the results in the order the tiles were given, so the outcome is the same as evaluating them one after another
+		for (int i=0; i < ordered.size(); i++) {
+			
+			// if we have run out of time then go with what we have evaluated so far
+			if (solver.getCancellation().isCancelled()) {
+				boardState.display("Evaluation of the locations was cancelled");
+				for (int j=i; j < tasks.size(); j++) {
+					tasks.get(j).cancel(false);
+				}
+				break;
+			}
+			
+			CandidateLocation tile = ordered.get(i);
+			
+			// any exception is rethrown here
+			EvaluatedLocation evalTile = tasks.get(i).join();
+			
+			// the task saw the cancellation before it started
+			if (evalTile == null && !evaluations.get(i).skipped) {
+				boardState.display("Evaluation of the locations was cancelled");
+				break;
+			}
+			
+			// a skipped tile can't improve on the best either
+			if (!canImprove(tile)) {
+				continue;
+			}
+			
+			addEvaluation(evalTile);
+			mergedWeighting = best.getWeighting();
 		}
 
 	}
@@ -130,23 +220,54 @@ public class EvaluateLocations {
 	 */
 	public void evaluateLocation(CandidateLocation tile) {
 
-		if (best != null) {
-			if (tile.getProbability().multiply(Solver.PROGRESS_MULTIPLIER).compareTo(best.getWeighting()) <= 0) {
-				boardState.display(tile.display() + " is ignored because it can not do better than the best");
-				return;
-			}
+		if (!canImprove(tile)) {
+			return;
 		}
 
 		//EvaluatedLocation evalTile = doEvaluateTile(tile);
-		EvaluatedLocation evalTile = doFullEvaluateTile(tile);
+		EvaluatedLocation evalTile = doFullEvaluateTile(boardState, tile);
 
+		addEvaluation(evalTile);
+	}
 
-		if (evalTile != null) {
-			if (best == null || evalTile.getWeighting().compareTo(best.getWeighting()) > 0) {
-				best = evalTile;
+	// a tile which can't beat the best tile found so far isn't worth evaluating
+	private boolean canImprove(CandidateLocation tile) {
+		
+		if (best != null) {
+			if (tile.getProbability().multiply(Solver.PROGRESS_MULTIPLIER).compareTo(best.getWeighting()) <= 0) {
+				boardState.display(tile.display() + " is ignored because it can not do better than the best");
+				return false;
 			}
-			evaluated.add(evalTile);
 		}
+		
+		return true;
+	}
+	
+	// add the evaluated tile to the results, or merge it into the tile it is linked to if that has already been evaluated
+	private void addEvaluation(EvaluatedLocation evalTile) {
+		
+		LinkedLocation linkedLocation = pe.getLinkedLocation(evalTile);
+		
+		if (linkedLocation != null) {
+			boardState.display("Considering with " + linkedLocation.getLinkedLocations().size() + " linked locations");
+			for (Location link: linkedLocation.getLinkedLocations()) {
+				boardState.display("Linked with " + link.display());
+				for (EvaluatedLocation e: evaluated) {
+					if (e.equals(link)) {
+						boardState.display("Found link in evaluated" + link.display());
+						e.merge(evalTile);
+						return;
+					}
+				}
+			}			
+		}
+		
+		if (best == null || evalTile.getWeighting().compareTo(best.getWeighting()) > 0) {
+			best = evalTile;
+			solver.setCurrentBest(new Action(best, Action.CLEAR, MoveMethod.PROBABILITY_ENGINE, "", best.getProbability()));
+		}
+		evaluated.add(evalTile);
+		
 	}
 
 	/**
@@ -251,7 +372,7 @@ public class EvaluateLocations {
 				//if (sol.signum() != 0) {
 					
 					found = true;
-					BigDecimal prob = new BigDecimal(sol).divide(new BigDecimal(pe.getSolutionCount()), Solver.DP, RoundingMode.HALF_UP);
+					BigDecimal prob = solver.divideCounts(sol, pe.getSolutionCount());
 					boardState.display(tile.display() + " with value " + i + " has " + clears + " clears with probability " + prob.toPlainString());
 
 					// expected clears is the sum of the number of mines cleared * the probability of clearing them
@@ -310,9 +431,10 @@ public class EvaluateLocations {
 	}
 
 	/**
-	 * Evaluate this tile and return its EvaluatedLocation
+	 * Evaluate this tile and return its EvaluatedLocation. The what-ifs are made on the board given, which is a snapshot when
+	 * tiles are being evaluated in parallel.
 	 */
-	private EvaluatedLocation doFullEvaluateTile(Location tile) {
+	private EvaluatedLocation doFullEvaluateTile(BoardState boardState, Location tile) {
 
 		long nanoStart = System.nanoTime();
 		//boardState.display(tile.display() + " is of interest as a superset");
@@ -348,7 +470,7 @@ public class EvaluateLocations {
 
 		for (int i = minMines; i <= maxMines; i++) {
 
-			SolutionCounter counter = solver.validateLocationUsingSolutionCounter(wholeEdge, tile, i);
+			SolutionCounter counter = solver.validateLocationUsingSolutionCounter(boardState, wholeEdge, tile, i);
 
 			BigInteger sol = counter.getSolutionCount();
 			int clears = counter.getClearCount();
@@ -356,7 +478,7 @@ public class EvaluateLocations {
 			// keep track of the maximum probability across all valid values
 			if (sol.signum() != 0) {
 				
-				BigDecimal prob = new BigDecimal(sol).divide(new BigDecimal(pe.getSolutionCount()), Solver.DP, RoundingMode.HALF_UP);
+				BigDecimal prob = solver.divideCounts(sol, pe.getSolutionCount());
 				
 				maxValueProgress = maxValueProgress.max(prob);
 				
@@ -392,22 +514,6 @@ public class EvaluateLocations {
 		//}
 
 
-		if (linkedLocation != null) {
-			boardState.display("Considering with " + linkedLocation.getLinkedLocations().size() + " linked locations");
-			top: for (Location link: linkedLocation.getLinkedLocations()) {
-				boardState.display("Linked with " + link.display());
-				for (EvaluatedLocation e: evaluated) {
-					if (e.equals(link)) {
-						boardState.display("Found link in evaluated" + link.display());
-						e.merge(result);
-						result = null;
-						break top;
-					}
-				}
-			}			
-		}
-
-
 		long nanoEnd = System.nanoTime();
 
 		boardState.display("Duration = " + (nanoEnd - nanoStart) + " nano-seconds");
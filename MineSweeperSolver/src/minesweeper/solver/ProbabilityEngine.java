@@ -831,6 +831,11 @@ public class ProbabilityEngine extends ProbabilityEngineModel {
 		return this.offEdgeBest;
 	}
 	
+	@Override
+	protected boolean isCancelled() {
+		return false;
+	}
+	
 	/**
 	 * true if a 100% certain move has been found
 	 * @return
@@ -0,0 +1,132 @@
+package minesweeper.solver;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import minesweeper.structure.Location;
+
+/**
+ * Holds the results of processing independent groups of witnesses in the {@link minesweeper.solver.ProbabilityEngineFast Probability Engine}
+ * so a group which hasn't changed since the last move doesn't need to be processed again.
+ *
+ * The {@link minesweeper.solver.SolutionCounter Solution Counter} keeps its own cache of the same form, so the what-ifs made while
+ * evaluating a guess only recount the group containing the tile being tested.
+ *
+ * The counts are held against the group's own box indices since the box uids change from move to move.
+ *
+ * @author David
+ *
+ */
+public class ProbabilityEngineCache {
+
+	private final static int MAX_ENTRIES = 500;
+
+	// a canonical description of everything processing an independent group depends on
+	protected static class GroupKey {
+
+		private final int[] data;
+		private final int hash;
+
+		protected GroupKey(int[] data) {
+			this.data = data;
+			this.hash = Arrays.hashCode(data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey other = (GroupKey) obj;
+			return hash == other.hash && Arrays.equals(data, other.data);
+		}
+
+	}
+
+	// a probability line for the group with the counts indexed by the group's boxes
+	protected static class GroupLine {
+
+		protected int mineCount;
+		protected long solutionCount;
+		protected long[] mineBoxCount;
+		protected BigInteger bigSolutionCount;     // only set if the line had been promoted to BigIntegers
+		protected BigInteger[] bigMineBoxCount;
+
+	}
+
+	// the processed group
+	protected static class GroupResult {
+
+		protected final List<GroupLine> lines = new ArrayList<>();
+		protected final List<Location> deadLocations = new ArrayList<>();
+
+		protected int maxTotalMines;     // the most mines the lines were allowed to hold
+		protected boolean capped;        // true if any lines were rejected because they would have held too many mines
+		protected int peakMines;         // the most mines held by any line which was built
+
+		// the results can be reused as long as the limit on the number of mines wouldn't have changed anything
+		protected boolean isValidFor(int maxTotalMines) {
+			if (capped) {
+				return this.maxTotalMines == maxTotalMines;
+			} else {
+				return peakMines <= maxTotalMines;
+			}
+		}
+
+	}
+
+	private final Map<GroupKey, GroupResult> cache = new LinkedHashMap<GroupKey, GroupResult>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<GroupKey, GroupResult> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+
+	};
+
+	private int hits = 0;
+	private int misses = 0;
+
+	protected synchronized GroupResult get(GroupKey key) {
+
+		GroupResult result = cache.get(key);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+
+		return result;
+	}
+
+	protected synchronized void put(GroupKey key, GroupResult result) {
+		cache.put(key, result);
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+}
@@ -4,20 +4,24 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import minesweeper.solver.constructs.Box;
 import minesweeper.solver.constructs.CandidateLocation;
 import minesweeper.solver.constructs.LinkedLocation;
 import minesweeper.solver.constructs.Square;
 import minesweeper.solver.constructs.Witness;
+import minesweeper.solver.settings.SolverSettings.NumericMode;
+import minesweeper.solver.utility.Cancellation;
 import minesweeper.structure.Area;
 import minesweeper.structure.Location;
 
@@ -33,9 +37,17 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	
 	private static final boolean CHECK_FOR_DEAD_LOCATIONS = true;
 	
-	private class MergeSorter implements Comparator<ProbabilityLine> {
+	// independent groups with at least this many boxes are processed on the fork-join pool when there is more than one of them
+	private static final int PARALLEL_GROUP_MINIMUM = 12;
+	
+	// merges of at least this many probability lines hash the lines' signatures rather than sorting them
+	private static final int HASH_MERGE_MINIMUM = 200;
+	
+	// sorts the rows of a probability line table
+	private class MergeSorter implements Comparator<Integer> {
 
 		int[] checks;
+		ProbabilityLineTable table;
 		
 		private MergeSorter() {
 			checks = new int[0];
@@ -54,9 +66,9 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		 
 		
 		@Override
-		public int compare(ProbabilityLine p1, ProbabilityLine p2) {
+		public int compare(Integer p1, Integer p2) {
 			
-			int c = p1.mineCount - p2.mineCount;
+			int c = table.mineCount[p1] - table.mineCount[p2];
 			
 			if (c != 0) {
 				return c;
@@ -70,7 +82,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 				//
 				//c = c1.compareTo(c2);
 				
-				c = p1.allocatedMines[index] - p2.allocatedMines[index];
+				c = table.getAllocatedMines(p1, index) - table.getAllocatedMines(p2, index);
 				
 				if (c != 0) {
 					return c;
@@ -83,46 +95,13 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 	}
 	
-	// used to hold a viable solution 
-	private class ProbabilityLine implements Comparable<ProbabilityLine> {
-		private int mineCount = 0;
-		private BigInteger solutionCount = BigInteger.ZERO;
-		private BigInteger[] mineBoxCount  = new BigInteger[boxCount];
-		
-		private int[] allocatedMines  = new int[boxCount];   // this is the number of mines originally allocate to a box
-		
-		private BigInteger[] hashCount  = new BigInteger[boxCount];
-		private BigInteger hash = new BigInteger(20, new Random());
-		
-		{
-			for (int i=0; i < mineBoxCount.length; i++) {
-				mineBoxCount[i] = BigInteger.ZERO;
-				hashCount[i] = BigInteger.ZERO;
-			}
-		}
-		
-		private ProbabilityLine() {
-			this(BigInteger.ZERO);
-		}
-		
-		private ProbabilityLine(BigInteger solutionCount) {
-			this.solutionCount = solutionCount;
-		}
-		
-		
-		@Override
-		// sort by the number of mines in the solution
-		public int compareTo(ProbabilityLine o) {
-			return this.mineCount - o.mineCount;
-		}
-	}
-	
 	// used to hold what we need to analyse next
 	private class NextWitness {
 		
 		private Witness witness;
 		private List<Box> newBoxes = new ArrayList<>();
 		private List<Box> oldBoxes = new ArrayList<>();
+		private int[] placed;    // the mines placed in each new box while distributing the missing mines
 		
 		private NextWitness(Witness w) {
 			
@@ -135,6 +114,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 					newBoxes.add(b);
 				}
 			}
+			
+			placed = new int[newBoxes.size()];
 
 		}
 	
@@ -151,24 +132,64 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 		private boolean firstCheck = true;
 		private int total;
+		
+		// the box uids held as primitives so checking the probability lines doesn't allocate
+		private int myUid;
+		private int mySize;
+		private int[] goodUids;
+		private int[] badUids;
+		private int[] badRequired;    // a bad box must either be empty or hold this many mines
+	
+	}
+	
+	// an independent set of witnesses and the boxes around them. These share no boxes with any other group so can be processed separately and merged afterwards
+	private class EdgeGroup {
+		
+		private List<Witness> witnesses = new ArrayList<>();
+		private List<Box> boxes = new ArrayList<>();
+		private List<DeadCandidate> deadCandidates = new ArrayList<>();    // the candidates whose boxes are all in this group
+		
+		private ProbabilityLineTable workingProbs; // as we work through the witnesses probabilities are held here
+		private boolean[] mask = new boolean[boxCount];    //when set to true indicates that the box has been part of this analysis
+		
+		// if we compress the probability lines before the edge is completely processed we can't use the data to look for dead tiles
+		private boolean canDoDeadTileAnalysis = true;
+		
+		private List<Location> deadLocations = new ArrayList<>();  // dead locations found in this group
+		private int recursions = 0;
+		
+		private ProbabilityEngineCache.GroupKey key;     // set if the results of this group can be cached
+		private boolean capped = false;    // true if a line was rejected because it would have too many mines for the game
+		private int peakMines = 0;         // the most mines held by any line built
+		
+	}
 	
+	// used to process an independent group on the fork-join pool
+	private class GroupTask implements Runnable {
+		
+		private final EdgeGroup group;
+		
+		private GroupTask(EdgeGroup group) {
+			this.group = group;
+		}
+		
+		@Override
+		public void run() {
+			processGroup(group);
+		}
+		
 	}
 	
 	private long duration;
 	
-	private List<ProbabilityLine> workingProbs = new ArrayList<>(); // as we work through an independent set of witnesses probabilities are held here
- 	private List<ProbabilityLine> heldProbs = new ArrayList<>();  
+ 	private ProbabilityLineTable heldProbs;  
 	
 	private BigDecimal[] boxProb;
-	private BigInteger[] hashTally;
 	private boolean offEdgeBest = true;
 	private BigDecimal offEdgeProbability;
 	private BigDecimal bestProbability;
 	private BigDecimal cutoffProbability;
 
-	//when set to true indicates that the box has been part of this analysis
-	private boolean[] mask;           
-	
 	private List<LinkedLocation> linkedLocations = new ArrayList<>();
 	private List<LinkedLocation> contraLinkedLocations = new ArrayList<>();
 	//private List<Location> dominatedTiles = new ArrayList<>();
@@ -187,13 +208,18 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	final private List<Box> boxes;
 	final private int minesLeft;                 // number of mines undiscovered in the game
 	final private int squaresLeft;               // number of squares undiscovered in the game and off the web
+	final private NumericMode numericMode;
+	final private ProbabilityEngineCache cache;
+	final private Cancellation cancellation;
+	private volatile boolean cancelled = false;    // set if we stopped before all the groups were processed
 	private Area deadLocations;
 	
 	private int independentGroups = 0;
-	private int recursions = 0;
-	private boolean canDoDeadTileAnalysis;
+	private AtomicInteger promotions = new AtomicInteger();          // number of probability lines which had to be promoted to BigIntegers
 	
 	private BigInteger finalSolutionsCount;
+	private boolean exactCountPending = false;                    // the exact count is only found if it is asked for
+	private double logSolutionCount = Double.NEGATIVE_INFINITY;   // the natural log of the count, set when using doubles
 	
 	// these are the limits that can be on the edge
 	final private int minTotalMines;
@@ -204,8 +230,22 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	
 	
 	public ProbabilityEngineFast(BoardState boardState, WitnessWeb web, int squaresLeft, int minesLeft) {
+		this(boardState, web, squaresLeft, minesLeft, NumericMode.BIG_DECIMAL);
+	}
+	
+	public ProbabilityEngineFast(BoardState boardState, WitnessWeb web, int squaresLeft, int minesLeft, NumericMode numericMode) {
+		this(boardState, web, squaresLeft, minesLeft, numericMode, null);
+	}
+	
+	/**
+	 * If a cache is supplied then independent groups which are unchanged since they were last processed are taken from it rather than recalculated
+	 */
+	public ProbabilityEngineFast(BoardState boardState, WitnessWeb web, int squaresLeft, int minesLeft, NumericMode numericMode, ProbabilityEngineCache cache) {
 		
 		this.boardState = boardState;
+		this.numericMode = numericMode;
+		this.cache = cache;
+		this.cancellation = boardState.getSolver().getCancellation();
 		this.web = web;
 		this.minesLeft = minesLeft;
 		this.squaresLeft = squaresLeft - web.getSquares().size();
@@ -224,7 +264,6 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		this.boxCount = boxes.size();
 		
 		this.boxProb = new BigDecimal[boxCount];
-		this.hashTally = new BigInteger[boxCount];
 		
 		for (Witness w: witnesses) {
 			w.setProcessed(false);
@@ -245,33 +284,70 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			determineCandidateDeadLocations();			
 		}
 
-		// if we compress the probability lines before the edge is completely processed we can't use the data to look for dead tiles
-		canDoDeadTileAnalysis = true;
-		
 		// create an initial solution of no mines anywhere
-		heldProbs.add(new ProbabilityLine(BigInteger.ONE));
+		heldProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+		heldProbs.addRow(1);
+		
+		// split the witnesses into groups which can be processed independently
+		List<EdgeGroup> groups = findIndependentGroups();
+		
+		// only process the groups which we haven't seen before
+		List<EdgeGroup> toProcess = new ArrayList<>();
+		
+		// when there are no squares off the edge the dead tile analysis depends on the whole board, so don't use the cache
+		boolean useCache = (cache != null && squaresLeft != 0);
+		
+		int reused = 0;
+		for (EdgeGroup group: groups) {
+			if (useCache) {
+				group.key = buildGroupKey(group);
+				ProbabilityEngineCache.GroupResult cached = cache.get(group.key);
+				if (cached != null && cached.isValidFor(maxTotalMines)) {
+					restoreGroup(group, cached);
+					reused++;
+					continue;
+				}
+			}
+			toProcess.add(group);
+		}
 		
-		// add an empty probability line to get us started
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+		if (useCache) {
+			boardState.display(reused + " of " + groups.size() + " independent groups reused from the cache");
+		}
 		
-		// create an empty mask - indicating no boxes have been processed
-		mask = new boolean[boxCount];           
+		processGroups(toProcess);
 		
-		NextWitness witness = findFirstWitness();
+		// if we were stopped part way through then there are no probabilities and nothing is worth caching
+		if (cancelled) {
+			boardState.display("Probability engine was cancelled before all the groups were processed");
+			for (EdgeGroup group: groups) {
+				if (group.workingProbs != null) {
+					release(group.workingProbs);
+					group.workingProbs = null;
+				}
+			}
+			release(heldProbs);
+			heldProbs = null;
+			duration = System.currentTimeMillis() - startTime;
+			return;
+		}
 		
-		while (witness != null) {
-			
-			// mark the new boxes as processed - which they will be soon
-			for (Box b: witness.newBoxes) {
-				mask[b.getUID()] = true;
+		if (useCache) {
+			for (EdgeGroup group: toProcess) {
+				cache.put(group.key, saveGroup(group));
 			}
+		}
+		
+		// combine the groups in the order they were found
+		for (EdgeGroup group: groups) {
 			
-			//System.out.println("Processing " + witness.witness.getLocation().display());
-			
-			workingProbs = mergeProbabilities(witness);
+			independentGroups++;
 			
-			witness = findNextWitness(witness);
+			for (Location dead: group.deadLocations) {
+				deadLocations = deadLocations.add(dead);
+			}
 			
+			storeProbabilities(group);
 		}
 		
 		// we have now processed all the independent sets of witness and they are being held in our list of list
@@ -298,6 +374,13 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 		calculateBoxProbabilities();
 		
+		release(heldProbs);
+		heldProbs = null;
+		
+		if (promotions.get() > 0) {
+			boardState.display(promotions + " probability lines were promoted to BigInteger");
+		}
+		
 		/*
 		System.out.println("post crunch by mine count");
 		// display what we have found
@@ -319,21 +402,348 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		duration = System.currentTimeMillis() - startTime;
 	}
 	
-	private List<ProbabilityLine> crunchByMineCount(List<ProbabilityLine> target, MergeSorter sorter) {
+	// split the witnesses into groups which share no boxes, keeping the witnesses and boxes in their original order
+	private List<EdgeGroup> findIndependentGroups() {
+		
+		List<EdgeGroup> groups = new ArrayList<>();
+		
+		int[] boxGroup = new int[boxCount];
+		for (int i=0; i < boxGroup.length; i++) {
+			boxGroup[i] = -1;
+		}
+		Map<Witness, Integer> witnessGroup = new HashMap<>();
+		
+		for (Witness w: witnesses) {
+			
+			if (witnessGroup.containsKey(w)) {
+				continue;
+			}
+			
+			int groupId = groups.size();
+			groups.add(new EdgeGroup());
+			
+			// flood out from this witness through the boxes it shares with other witnesses
+			List<Witness> todo = new ArrayList<>();
+			todo.add(w);
+			witnessGroup.put(w, groupId);
+			
+			while (!todo.isEmpty()) {
+				Witness next = todo.remove(todo.size() - 1);
+				for (Box b: next.getBoxes()) {
+					if (boxGroup[b.getUID()] == -1) {
+						boxGroup[b.getUID()] = groupId;
+						for (Witness w1: b.getWitnesses()) {
+							if (!witnessGroup.containsKey(w1)) {
+								witnessGroup.put(w1, groupId);
+								todo.add(w1);
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		for (Witness w: witnesses) {
+			groups.get(witnessGroup.get(w)).witnesses.add(w);
+		}
+		
+		for (Box b: boxes) {
+			if (boxGroup[b.getUID()] != -1) {
+				groups.get(boxGroup[b.getUID()]).boxes.add(b);
+			}
+		}
+		
+		// a candidate dead location can only be checked if all its boxes are in the same group
+		for (DeadCandidate dc: deadCandidates) {
+			
+			int groupId = boxGroup[dc.myBox.getUID()];
+			
+			boolean sameGroup = true;
+			for (Box b: dc.goodBoxes) {
+				if (boxGroup[b.getUID()] != groupId) {
+					sameGroup = false;
+				}
+			}
+			for (Box b: dc.badBoxes) {
+				if (boxGroup[b.getUID()] != groupId) {
+					sameGroup = false;
+				}
+			}
+			
+			if (sameGroup && groupId != -1) {
+				groups.get(groupId).deadCandidates.add(dc);
+			} else {
+				boardState.display("Location " + dc.candidate.display() + " has boxes in more than one independent group so assumed alive");
+				dc.isAlive = true;
+			}
+		}
+		
+		return groups;
+		
+	}
+	
+	// process the independent groups, running the larger ones concurrently on the fork-join pool if there is more than one of them
+	private void processGroups(List<EdgeGroup> groups) {
+		
+		int largeGroups = 0;
+		for (EdgeGroup group: groups) {
+			if (group.boxes.size() >= PARALLEL_GROUP_MINIMUM) {
+				largeGroups++;
+			}
+		}
+		
+		// not worth the overhead so stay on this thread
+		if (largeGroups < 2) {
+			for (EdgeGroup group: groups) {
+				processGroup(group);
+			}
+			return;
+		}
+		
+		boardState.display("Processing " + largeGroups + " independent groups in parallel");
+		
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (EdgeGroup group: groups) {
+			if (group.boxes.size() >= PARALLEL_GROUP_MINIMUM) {
+				tasks.add(ForkJoinPool.commonPool().submit(new GroupTask(group)));
+			} else {
+				processGroup(group);
+			}
+		}
+		
+		// wait for them to finish, any exception is rethrown here
+		for (ForkJoinTask<?> task: tasks) {
+			task.join();
+		}
+		
+	}
+	
+	// build the probability lines for an independent group of witnesses. This only uses the group's witnesses and boxes so groups can be processed at the same time
+	private void processGroup(EdgeGroup group) {
+		
+		// add an empty probability line to get us started
+		group.workingProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+		group.workingProbs.addRow(1);
+		
+		NextWitness witness = new NextWitness(group.witnesses.get(0));
+		
+		while (witness != null) {
+			
+			// stop if the solver no longer needs the answer
+			if (cancellation.isCancelled()) {
+				cancelled = true;
+				release(group.workingProbs);
+				group.workingProbs = null;
+				return;
+			}
+			
+			// mark the new boxes as processed - which they will be soon
+			for (Box b: witness.newBoxes) {
+				group.mask[b.getUID()] = true;
+			}
+			
+			//System.out.println("Processing " + witness.witness.getLocation().display());
+			
+			group.workingProbs = mergeProbabilities(group, witness);
+			
+			witness = findNextWitness(group);
+			
+		}
+		
+		// since we have calculated all the mines in an independent set of witnesses we can crunch them down and store them for later
+		
+		// before we crunch everything down check for dead tiles
+		if (CHECK_FOR_DEAD_LOCATIONS) {
+			checkCandidateDeadLocations(group);
+			//checkEdgeIsDead(group);
+		}
+		
+		// if we haven't compressed yet then do it now
+		if (group.canDoDeadTileAnalysis) {
+			MergeSorter sorter = new MergeSorter();
+			group.workingProbs = crunchByMineCount(group.workingProbs, sorter, group.mask);
+		}
+		
+	}
+	
+	// build a key which describes everything the processing of this group depends on: the witnesses and their mines, the boxes
+	// and the order they are linked together in, and the candidate dead locations. The boxes are referenced by their position in the group.
+	private ProbabilityEngineCache.GroupKey buildGroupKey(EdgeGroup group) {
+		
+		int[] localBox = new int[boxCount];
+		for (int i=0; i < group.boxes.size(); i++) {
+			localBox[group.boxes.get(i).getUID()] = i;
+		}
+		
+		Map<Witness, Integer> localWitness = new HashMap<>();
+		for (int i=0; i < group.witnesses.size(); i++) {
+			localWitness.put(group.witnesses.get(i), i);
+		}
+		
+		List<Integer> key = new ArrayList<>();
+		
+		key.add(group.witnesses.size());
+		for (Witness w: group.witnesses) {
+			key.add(w.x);
+			key.add(w.y);
+			key.add(w.getMines());
+			key.add(w.getBoxes().size());
+			for (Box b: w.getBoxes()) {
+				key.add(localBox[b.getUID()]);
+			}
+		}
+		
+		key.add(group.boxes.size());
+		for (Box b: group.boxes) {
+			key.add(b.getMinMines());
+			key.add(b.getMaxMines());
+			key.add(b.getSquares().size());
+			for (Square squ: b.getSquares()) {
+				key.add(squ.x);
+				key.add(squ.y);
+			}
+			key.add(b.getWitnesses().size());
+			for (Witness w: b.getWitnesses()) {
+				key.add(localWitness.get(w));
+			}
+		}
+		
+		key.add(group.deadCandidates.size());
+		for (DeadCandidate dc: group.deadCandidates) {
+			key.add(dc.candidate.x);
+			key.add(dc.candidate.y);
+			key.add(localBox[dc.myBox.getUID()]);
+			key.add(dc.goodBoxes.size());
+			for (Box b: dc.goodBoxes) {
+				key.add(localBox[b.getUID()]);
+			}
+			key.add(dc.badBoxes.size());
+			for (Box b: dc.badBoxes) {
+				key.add(localBox[b.getUID()]);
+			}
+		}
+		
+		int[] data = new int[key.size()];
+		for (int i=0; i < data.length; i++) {
+			data[i] = key.get(i);
+		}
+		
+		return new ProbabilityEngineCache.GroupKey(data);
+		
+	}
+	
+	// copy the processed group's results into a form which doesn't depend on the box uids
+	private ProbabilityEngineCache.GroupResult saveGroup(EdgeGroup group) {
+		
+		ProbabilityEngineCache.GroupResult result = new ProbabilityEngineCache.GroupResult();
+		
+		result.maxTotalMines = maxTotalMines;
+		result.capped = group.capped;
+		result.peakMines = group.peakMines;
+		result.deadLocations.addAll(group.deadLocations);
+		
+		int size = group.boxes.size();
+		
+		ProbabilityLineTable pl = group.workingProbs;
+		
+		for (int row=0; row < pl.size(); row++) {
+			
+			ProbabilityEngineCache.GroupLine line = new ProbabilityEngineCache.GroupLine();
+			line.mineCount = pl.mineCount[row];
+			
+			if (pl.isBig(row)) {
+				line.bigSolutionCount = pl.getSolutionCount(row);
+				line.bigMineBoxCount = new BigInteger[size];
+			} else {
+				line.solutionCount = pl.solutionCount[row];
+				line.mineBoxCount = new long[size];
+			}
+			
+			for (int i=0; i < size; i++) {
+				int uid = group.boxes.get(i).getUID();
+				if (pl.isBig(row)) {
+					line.bigMineBoxCount[i] = pl.getMineBoxCount(row, uid);
+				} else {
+					line.mineBoxCount[i] = pl.mineBoxCount[row * boxCount + uid];
+				}
+			}
+			
+			result.lines.add(line);
+		}
+		
+		return result;
+	}
+	
+	// rebuild the group's probability lines from the cached results
+	private void restoreGroup(EdgeGroup group, ProbabilityEngineCache.GroupResult cached) {
+		
+		for (Box b: group.boxes) {
+			group.mask[b.getUID()] = true;
+		}
+		
+		group.deadLocations.addAll(cached.deadLocations);
+		
+		ProbabilityLineTable pl = ProbabilityLineTable.acquire(boxCount, true, null);
+		
+		for (ProbabilityEngineCache.GroupLine line: cached.lines) {
+			
+			int row;
+			if (line.bigSolutionCount != null) {
+				row = pl.addRow(line.bigSolutionCount);
+			} else {
+				row = pl.addRow(line.solutionCount);
+			}
+			pl.mineCount[row] = line.mineCount;
+			
+			for (int i=0; i < group.boxes.size(); i++) {
+				int uid = group.boxes.get(i).getUID();
+				if (line.bigSolutionCount != null) {
+					pl.setMineBoxCount(row, uid, line.bigMineBoxCount[i]);
+				} else {
+					pl.mineBoxCount[row * boxCount + uid] = line.mineBoxCount[i];
+				}
+			}
+		}
+		
+		group.workingProbs = pl;
+		
+	}
+	
+	// return the table to the pool, keeping a note of how many of its lines had to be promoted
+	private void release(ProbabilityLineTable table) {
+		promotions.addAndGet(table.getPromotions());
+		table.release();
+	}
+	
+	private ProbabilityLineTable crunchByMineCount(ProbabilityLineTable target, MergeSorter sorter, boolean[] mask) {
 		
 		if (target.isEmpty()) {
 			return target;
 		}
 		
-		// sort the solutions by number of mines
-		Collections.sort(target, sorter);
+		// for a large number of lines combine them in a single pass rather than sorting them
+		if (target.size() >= HASH_MERGE_MINIMUM) {
+			ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
+			target.mergeInto(result, sorter.checks, mask);
+			boardState.display(target.size() + " Probability Lines compressed to " + result.size() + " by hashing"); 
+			release(target);
+			return result;
+		}
 		
-		List<ProbabilityLine> result = new ArrayList<>();
+		// sort the solutions by number of mines
+		Integer[] order = new Integer[target.size()];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
+		}
+		sorter.table = target;
+		Arrays.sort(order, sorter);
 		
-		ProbabilityLine current = null;
+		ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
 		
+		int current = -1;
+		int currentRow = -1;
 		
-		for (ProbabilityLine pl: target) {
+		for (int pl: order) {
 
 			/*
 			String show = pl.mineCount + " : " + pl.solutionCount + " : ";
@@ -343,62 +753,27 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			boardState.display(show);
 			*/
 			
-			if (current == null) {
-				current = pl;
-			} else if (sorter.compare(current, pl) != 0) {
-				result.add(current);
+			if (current == -1 || sorter.compare(current, pl) != 0) {
 				current = pl;
+				currentRow = result.addCopy(target, pl);
 			} else {
 				//boardState.display("Combining");
-				combineProbabilities(current, pl);
+				result.combine(currentRow, target, pl, mask);
 			}
 			
 		}
 
-		result.add(current);
-
 		boardState.display(target.size() + " Probability Lines compressed to " + result.size()); 
+		
+		release(target);
 			
 		return result;
 		
 	}
 
 	
-	// calculate how many ways this solution can be generated and roll them into one
-	private void combineProbabilities(ProbabilityLine npl, ProbabilityLine pl) {
-		
-		/*
-		BigInteger solutions = BigInteger.ONE;
-		for (int i = 0; i < pl.mineBoxCount.length; i++) {
-			solutions = solutions.multiply(BigInteger.valueOf(SMALL_COMBINATIONS[boxes.get(i).getSquares().size()][pl.mineBoxCount[i].intValue()]));
-		}
-
-		npl.solutionCount = npl.solutionCount.add(solutions);
-		*/
-		npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-		
-		for (int i = 0; i < pl.mineBoxCount.length; i++) {
-			if (mask[i]) {  // if this box has been involved in this solution - if we don't do this the hash gets corrupted by boxes = 0 mines because they weren't part of this edge
-	 			//npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i].multiply(solutions));
-	 			npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
-	 			
-				if (pl.mineBoxCount[i].signum() == 0) {
-					//npl.hashCount[i] = npl.hashCount[i].subtract(pl.hash.multiply(BigInteger.valueOf(boxes.get(i).getSquares().size())));   // treat no mines as -1 rather than zero
-					npl.hashCount[i] = npl.hashCount[i].subtract(pl.hash);   // treat no mines as -1 rather than zero
-				} else {
-					npl.hashCount[i] = npl.hashCount[i].add(pl.mineBoxCount[i].multiply(pl.hash));
-				}				
-			}
-
-			
-		}
-		
-	}
-	
 	// this combines newly generated probabilities with ones we have already stored from other independent sets of witnesses
-	private void storeProbabilities() {
-		
-		List<ProbabilityLine> result = new ArrayList<>(); 
+	private void storeProbabilities(EdgeGroup group) {
 		
 		//if (workingProbs.isEmpty()) {
 		//	solver.display("working probabilites list is empty!!");
@@ -412,75 +787,59 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		// crunch the new ones down to one line per mine count
 		//List<ProbabilityLine> crunched = crunchByMineCount(workingProbs);
 
-		List<ProbabilityLine> crunched = workingProbs;
+		ProbabilityLineTable crunched = group.workingProbs;
 		
 		if (crunched.size() == 1) {
-			checkEdgeIsIsolated();
+			checkEdgeIsIsolated(group);
 		}
 
 		
 		//solver.display("New data has " + crunched.size() + " entries");
 		
-		for (ProbabilityLine pl: crunched) {
+		ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
+		
+		for (int pl=0; pl < crunched.size(); pl++) {
 			
-			for (ProbabilityLine epl: heldProbs) {
-
-				if (pl.mineCount + epl.mineCount <= maxTotalMines) {
-					
-					ProbabilityLine npl = new ProbabilityLine(pl.solutionCount.multiply(epl.solutionCount));
-					npl.mineCount = pl.mineCount + epl.mineCount;
-					
-					//npl.solutionCount = pl.solutionCount.multiply(epl.solutionCount);
-					
-					for (int i=0; i < npl.mineBoxCount.length; i++) {
-						
-						BigInteger w1 = pl.mineBoxCount[i].multiply(epl.solutionCount);
-						BigInteger w2 = epl.mineBoxCount[i].multiply(pl.solutionCount);
-						npl.mineBoxCount[i] = w1.add(w2);
-						
-						npl.hashCount[i] = epl.hashCount[i].add(pl.hashCount[i]);
+			for (int epl=0; epl < heldProbs.size(); epl++) {
 
-					}
-					result.add(npl);
-					
+				if (crunched.mineCount[pl] + heldProbs.mineCount[epl] <= maxTotalMines) {
+					result.addProduct(crunched, pl, heldProbs, epl);
 				}
 				
 			}
 			
 		}
-	
-		// sort into mine order 
-		Collections.sort(result);
 		
-		heldProbs.clear();
+		release(crunched);
+		group.workingProbs = null;
 		
-		// if result is empty this is an impossible position
-		if (result.isEmpty()) {
-			return;
+		// sort into mine order 
+		Integer[] order = new Integer[result.size()];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
 		}
+		final ProbabilityLineTable sorting = result;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer p1, Integer p2) {
+				return sorting.mineCount[p1] - sorting.mineCount[p2];
+			}
+		});
 		
-		// and combine them into a single probability line for each mine count
-		int mc = result.get(0).mineCount;
-		ProbabilityLine npl = new ProbabilityLine();
-		npl.mineCount = mc;
+		release(heldProbs);
+		heldProbs = ProbabilityLineTable.acquire(boxCount, true, null);
 		
-		for (ProbabilityLine pl: result) {
-			if (pl.mineCount != mc) {
-				heldProbs.add(npl);
-				mc = pl.mineCount;
-				npl = new ProbabilityLine();
-				npl.mineCount = mc;
-			}
-			npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-			
-			for (int i = 0; i < pl.mineBoxCount.length; i++) {
-				npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
-				
-				npl.hashCount[i] = npl.hashCount[i].add(pl.hashCount[i]);
+		// and combine them into a single probability line for each mine count. If result is empty this is an impossible position
+		int npl = -1;
+		for (int pl: order) {
+			if (npl == -1 || result.mineCount[pl] != heldProbs.mineCount[npl]) {
+				npl = heldProbs.addRow(0);
+				heldProbs.mineCount[npl] = result.mineCount[pl];
 			}
+			heldProbs.accumulate(npl, result, pl);
 		}
-
-		heldProbs.add(npl);
+		
+		release(result);
 
 		/*
 		for (Box b: boxes) {
@@ -503,10 +862,22 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	// sum them together to create a definitive probability for each box
 	private void calculateBoxProbabilities() {
 		
+		if (numericMode == NumericMode.DOUBLE) {
+			calculateBoxProbabilitiesDouble();
+		} else {
+			calculateBoxProbabilitiesExact();
+		}
+		
+		findBestProbability();
+		
+	}
+	
+	// calculate the box probabilities exactly using BigIntegers and then dividing to Solver.DP decimal places
+	private void calculateBoxProbabilitiesExact() {
+		
 		BigInteger[] tally = new BigInteger[boxCount];
 		for (int i=0; i < tally.length; i++) {
 			tally[i] = BigInteger.ZERO;
-			hashTally[i] =  BigInteger.ZERO;
 		}
 
 		// total game tally
@@ -516,25 +887,28 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		BigInteger outsideTally = BigInteger.ZERO;
 		
 		// calculate how many mines 
-		for (ProbabilityLine pl: heldProbs) {
+		for (int pl=0; pl < heldProbs.size(); pl++) {
 			
-			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+			int mineCount = heldProbs.mineCount[pl];
+			
+			if (mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+				
+				BigInteger solutionCount = heldProbs.getSolutionCount(pl);
 				
-				if (mineCounts.put(pl.mineCount, pl.solutionCount) != null) {
+				if (mineCounts.put(mineCount, solutionCount) != null) {
 					System.out.println("Duplicate mines in probability Engine");
 				}
 					
 				
-				BigInteger mult = Solver.combination(minesLeft - pl.mineCount, squaresLeft);  //# of ways the rest of the board can be formed
+				BigInteger mult = Solver.combination(minesLeft - mineCount, squaresLeft);  //# of ways the rest of the board can be formed
 				
-				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - pl.mineCount)).multiply(pl.solutionCount));
+				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - mineCount)).multiply(solutionCount));
 				
 				// this is all the possible ways the mines can be placed across the whole game
-				totalTally = totalTally.add(mult.multiply(pl.solutionCount));
+				totalTally = totalTally.add(mult.multiply(solutionCount));
 				
 				for (int i=0; i < tally.length; i++) {
-					tally[i] = tally[i].add(mult.multiply(pl.mineBoxCount[i]).divide(BigInteger.valueOf( boxes.get(i).getSquares().size())));
-					hashTally[i] = hashTally[i].add(pl.hashCount[i]);
+					tally[i] = tally[i].add(mult.multiply(heldProbs.getMineBoxCount(pl, i)).divide(BigInteger.valueOf( boxes.get(i).getSquares().size())));
 				}				
 			}
 
@@ -565,6 +939,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		}
 
 		
+		// the lines are no longer hashed, so this needs the hash keys passing to the tables and a tally of the hashes to work again
 		/*
 		for (int i=0; i < hashTally.length; i++) {
 			//solver.display(boxes.get(i).getSquares().size() + " " + boxes.get(i).getSquares().get(0).display() + " " + hashTally[i].toString());
@@ -611,6 +986,143 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		}
 	
 		finalSolutionsCount = totalTally;
+		
+	}
+	
+	// calculate the box probabilities using doubles. The weight of each probability line is held in log-space relative to
+	// the largest so the huge binomial coefficients can't overflow. The exact solution count is only built if it is asked for.
+	private void calculateBoxProbabilitiesDouble() {
+		
+		double[] tally = new double[boxCount];
+		
+		// track which boxes are certainly mines or certainly safe exactly, so rounding can't create a false certainty
+		boolean[] allMines = new boolean[boxCount];
+		boolean[] allSafe = new boolean[boxCount];
+		for (int i=0; i < boxCount; i++) {
+			allMines[i] = true;
+			allSafe[i] = true;
+		}
+		
+		// log(n!) for the binomial coefficients of the tiles off the edge
+		double[] logFactorial = new double[squaresLeft + 1];
+		for (int i=2; i <= squaresLeft; i++) {
+			logFactorial[i] = logFactorial[i - 1] + Math.log(i);
+		}
+		
+		List<Integer> lines = new ArrayList<>();
+		List<Double> logWeights = new ArrayList<>();
+		double maxLogWeight = Double.NEGATIVE_INFINITY;
+		
+		for (int pl=0; pl < heldProbs.size(); pl++) {
+			
+			int mineCount = heldProbs.mineCount[pl];
+			
+			if (mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+				
+				BigInteger solutionCount = heldProbs.getSolutionCount(pl);
+				
+				if (mineCounts.put(mineCount, solutionCount) != null) {
+					System.out.println("Duplicate mines in probability Engine");
+				}
+				
+				int offEdgeMines = minesLeft - mineCount;
+				if (offEdgeMines < 0 || offEdgeMines > squaresLeft || solutionCount.signum() == 0) {
+					continue;
+				}
+				
+				//# of ways the whole board can be formed, as a log
+				double logSolutions = heldProbs.isBig(pl) ? Solver.log(solutionCount) : Math.log(heldProbs.solutionCount[pl]);
+				double logWeight = logFactorial[squaresLeft] - logFactorial[offEdgeMines] - logFactorial[squaresLeft - offEdgeMines] + logSolutions;
+				maxLogWeight = Math.max(maxLogWeight, logWeight);
+				
+				lines.add(pl);
+				logWeights.add(logWeight);
+			}
+			
+		}
+		
+		// total game tally
+		double totalTally = 0;
+		
+		// outside a box tally
+		double outsideTally = 0;
+		
+		for (int j=0; j < lines.size(); j++) {
+			
+			int pl = lines.get(j);
+			double weight = Math.exp(logWeights.get(j) - maxLogWeight);
+			
+			outsideTally = outsideTally + weight * (minesLeft - heldProbs.mineCount[pl]);
+			totalTally = totalTally + weight;
+			
+			for (int i=0; i < tally.length; i++) {
+				int size = boxes.get(i).getSquares().size();
+				if (heldProbs.mineBoxSignum(pl, i) != 0) {
+					allSafe[i] = false;
+				}
+				if (!heldProbs.hasMinesInBox(pl, i, size)) {
+					allMines[i] = false;
+				}
+				tally[i] = tally[i] + weight * heldProbs.getMineRatio(pl, i, size);
+			}
+		}
+		
+		if (totalTally != 0) {
+			logSolutionCount = maxLogWeight + Math.log(totalTally);
+		}
+		
+		boardState.display("Total Candidate solutions is about e^" + logSolutionCount);
+		
+		for (int i=0; i < boxProb.length; i++) {
+			if (totalTally != 0) {
+				if (allMines[i]) {  // a mine
+					boxProb[i] = BigDecimal.ZERO;
+					for (Square squ: boxes.get(i).getSquares()) {  // add the squares in the box to the list of mines
+						mines.add(squ);
+						deadLocations = deadLocations.remove(squ);  // a definite mine can't be dead
+					}					
+				} else if (allSafe[i]) {  // safe
+					boxProb[i] = BigDecimal.ONE;
+					for (Square squ: boxes.get(i).getSquares()) {
+						deadLocations = deadLocations.remove(squ);  // a safe tile can't be dead
+					}					
+				} else {
+					boxProb[i] = BigDecimal.valueOf(1d - tally[i] / totalTally);
+				}
+				
+			} else {
+				boxProb[i] = BigDecimal.ZERO;
+			}
+		}
+		
+		// avoid divide by zero
+		if (squaresLeft != 0 && totalTally != 0) {
+			offEdgeProbability = BigDecimal.valueOf(1d - outsideTally / totalTally / squaresLeft);
+		} else {
+			offEdgeProbability = BigDecimal.ZERO;
+		}
+		
+		finalSolutionsCount = null;
+		exactCountPending = true;
+		
+	}
+	
+	// the exact number of solutions, from the solution count of each number of mines on the edge
+	private BigInteger exactSolutionCount() {
+		
+		BigInteger totalSolutions = BigInteger.ZERO;
+		for (Map.Entry<Integer, BigInteger> entry: mineCounts.entrySet()) {
+			int offEdgeMines = minesLeft - entry.getKey();
+			if (offEdgeMines >= 0 && offEdgeMines <= squaresLeft) {
+				totalSolutions = totalSolutions.add(Solver.combination(offEdgeMines, squaresLeft).multiply(entry.getValue()));
+			}
+		}
+		
+		return totalSolutions;
+	}
+	
+	// find the best probability, either on or off the edge, and the cut off for a location to be considered a candidate
+	private void findBestProbability() {
 
 		// see if we can find a guess which is better than outside the boxes
 		BigDecimal hwm = offEdgeProbability;
@@ -648,7 +1160,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		if (bestProbability.compareTo(BigDecimal.ONE) == 0) {
 			cutoffProbability = BigDecimal.ONE;
 		} else {
-			cutoffProbability = bestProbability.multiply(Solver.PROB_ENGINE_TOLERENCE);
+			cutoffProbability = applyTolerance(bestProbability, Solver.PROB_ENGINE_TOLERENCE);
 		}
 		
 		
@@ -658,6 +1170,15 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 	
 	
+	// in double mode the tolerance is applied as a double so the cut off doesn't grow extra decimal places
+	private BigDecimal applyTolerance(BigDecimal probability, BigDecimal tolerance) {
+		if (numericMode == NumericMode.DOUBLE) {
+			return BigDecimal.valueOf(probability.doubleValue() * tolerance.doubleValue());
+		} else {
+			return probability.multiply(tolerance);
+		}
+	}
+	
 	private void addLinkedLocation(List<LinkedLocation> list, Box box, Box linkTo) {
 		
 		top:for (Square s: box.getSquares()) {
@@ -674,26 +1195,30 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 	}
 	
-	private List<ProbabilityLine> mergeProbabilities(NextWitness nw) {
+	private ProbabilityLineTable mergeProbabilities(EdgeGroup group, NextWitness nw) {
 		
-		List<ProbabilityLine> newProbs = new ArrayList<>();
+		ProbabilityLineTable probs = group.workingProbs;
+		ProbabilityLineTable newProbs = ProbabilityLineTable.acquire(boxCount, true, null);
 		
-		for (ProbabilityLine pl: workingProbs) {
+		for (int pl=0; pl < probs.size(); pl++) {
 			
-			int missingMines = nw.witness.getMines() - countPlacedMines(pl, nw);
+			int missingMines = nw.witness.getMines() - countPlacedMines(probs, pl, nw);
 			
 			if (missingMines < 0) {
 				// too many mines placed around this witness previously, so this probability can't be valid
 			} else if (missingMines == 0) {
-				newProbs.add(pl);   // witness already exactly satisfied, so nothing to do
+				newProbs.addCopy(probs, pl);   // witness already exactly satisfied, so nothing to do
 			} else if (nw.newBoxes.isEmpty()) {
 				// nowhere to put the new mines, so this probability can't be valid
 			} else {
-				newProbs.addAll(distributeMissingMines(pl, nw, missingMines, 0));
+				distributeMissingMines(group, newProbs, probs, pl, nw, missingMines, 0, 0);
 			}
 	
 		}
 		
+		release(probs);
+		group.workingProbs = null;
+		
 		// flag the last set of details as processed
 		nw.witness.setProcessed(true);
 		for (Box b: nw.newBoxes) {
@@ -703,15 +1228,15 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		//boardState.display("Processed witness " + nw.witness.display());
 		
 		//if we haven't compressed yet and we are still a small edge then don't compress
-		if (newProbs.size() < 100 && canDoDeadTileAnalysis) {
+		if (newProbs.size() < 100 && group.canDoDeadTileAnalysis) {
 			return newProbs;
 		}
 		
 		// about to compress the line
-		canDoDeadTileAnalysis = false;
+		group.canDoDeadTileAnalysis = false;
 		
 		List<Box> boundaryBoxes = new ArrayList<>();
-		for (Box box: boxes) {
+		for (Box box: group.boxes) {
 			boolean notProcessed = false;
 			boolean processed = false;
 			for (Witness wit: box.getWitnesses()) {
@@ -731,45 +1256,45 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		
 		MergeSorter sorter = new MergeSorter(boundaryBoxes);
 		
-		newProbs = crunchByMineCount(newProbs, sorter);
+		newProbs = crunchByMineCount(newProbs, sorter, group.mask);
 
 		return newProbs;
 		
 	}
 	
-	// this is used to recursively place the missing Mines into the available boxes for the probability line
-	private List<ProbabilityLine> distributeMissingMines(ProbabilityLine pl, NextWitness nw, int missingMines, int index) {
+	// this is used to recursively place the missing Mines into the available boxes for the probability line. Only the completed lines are added to the new table.
+	private void distributeMissingMines(EdgeGroup group, ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int missingMines, int placedMines, int index) {
 		
-		recursions++;
-		if (recursions % 10000 == 0) {
-			boardState.display("Probability Engine recursion = " + recursions);
+		group.recursions++;
+		if (group.recursions % 10000 == 0) {
+			boardState.display("Probability Engine recursion = " + group.recursions);
 		}
 		
-		List<ProbabilityLine> result = new ArrayList<>();
-		
 		// if there is only one box left to put the missing mines we have reach this end of this branch of recursion
 		if (nw.newBoxes.size() - index == 1) {
 			// if there are too many for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMaxMines() < missingMines) {
-				return result;
+				return;
 			}
 			// if there are too few for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMinMines() > missingMines) {
-				return result;
+				return;
 			}
+			
+			int mineCount = probs.mineCount[pl] + placedMines + missingMines;
+			
 			// if there are too many for this game then the probability can't be valid
-			if (pl.mineCount + missingMines > maxTotalMines) {
-				return result;
+			if (mineCount > maxTotalMines) {
+				group.capped = true;
+				return;
 			}			
 			
-			// otherwise place the mines in the probability line
+			group.peakMines = Math.max(group.peakMines, mineCount);
 			
-			//pl.mineBoxCount[nw.newBoxes.get(index).getUID()] = BigInteger.valueOf(missingMines).multiply(pl.solutionCount);
-			//pl.mineCount = pl.mineCount + missingMines;
-			//result.add(pl);
-			
-			result.add(extendProbabilityLine(pl, nw.newBoxes.get(index), missingMines, true));
-			return result;
+			// otherwise place the mines in the probability line
+			nw.placed[index] = missingMines;
+			extendProbabilityLine(newProbs, probs, pl, nw, placedMines + missingMines);
+			return;
 		}
 		
 		
@@ -777,49 +1302,27 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		int maxToPlace = Math.min(nw.newBoxes.get(index).getMaxMines(), missingMines);
 		
 		for (int i=nw.newBoxes.get(index).getMinMines(); i <= maxToPlace; i++) {
-			ProbabilityLine npl = extendProbabilityLine(pl, nw.newBoxes.get(index), i, false);
-			
-			result.addAll(distributeMissingMines(npl, nw, missingMines - i, index + 1));
+			nw.placed[index] = i;
+			distributeMissingMines(group, newProbs, probs, pl, nw, missingMines - i, placedMines + i, index + 1);
 		}
 		
-		return result;
-		
 	}
 	
-	// create a new probability line by taking the old and adding the mines to the new Box
-	private ProbabilityLine extendProbabilityLine(ProbabilityLine pl, Box newBox, int mines, boolean reuseLine) {
+	// create a new probability line by taking the old and adding the mines placed in the new boxes
+	private void extendProbabilityLine(ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int mines) {
 		
-		int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
+		// the number of ways the mines can be placed in the new boxes. At most 8 boxes of 70 ways each, so this can't overflow
+		long combination = 1;
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			combination = combination * SMALL_COMBINATIONS[nw.newBoxes.get(i).getSquares().size()][nw.placed[i]];
+		}
 		
-		ProbabilityLine result;
-		if (combination == 1 && reuseLine) {
-			result = pl;
-			result.mineCount = result.mineCount + mines;
-		} else {
-			BigInteger newSolutionCount = pl.solutionCount.multiply(BigInteger.valueOf(combination));
-			
-			result = new ProbabilityLine(newSolutionCount);
-			
-			result.mineCount = pl.mineCount + mines;
-			
-			// copy the probability array
-			if (combination == 1) {
-				System.arraycopy(pl.mineBoxCount, 0, result.mineBoxCount, 0, pl.mineBoxCount.length);
-			} else {
-				BigInteger multiplier = BigInteger.valueOf(combination);
-				for (int i=0; i < pl.mineBoxCount.length; i++) {
-					result.mineBoxCount[i] = pl.mineBoxCount[i].multiply(multiplier);
-				}
-			}
-			
-			result.allocatedMines = pl.allocatedMines.clone();
+		int row = newProbs.addExtended(probs, pl, combination, mines);
+		
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			newProbs.setMinesInBox(row, nw.newBoxes.get(i).getUID(), nw.placed[i]);
 		}
-
-
-		result.mineBoxCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(result.solutionCount);
-		result.allocatedMines[newBox.getUID()] = mines;
 		
-		return result;
 	}
 	
 	/*
@@ -837,15 +1340,29 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	*/
 	
 	// counts the number of mines already placed
-	private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+	private int countPlacedMines(ProbabilityLineTable probs, int pl, NextWitness nw) {
+		
+		if (!probs.isBig(pl)) {
+			long result = 0;
+			for (Box b: nw.oldBoxes) {
+				result = result + probs.mineBoxCount[pl * boxCount + b.getUID()];
+			}
+			
+			long solutionCount = probs.solutionCount[pl];
+			if (result % solutionCount != 0) {
+				System.out.println("Min Box Count divide has non-zero remainder " + result % solutionCount);
+			}
+			
+			return (int) (result / solutionCount);
+		}
 		
 		BigInteger result = BigInteger.ZERO;
 		
 		for (Box b: nw.oldBoxes) {
-			result = result.add(pl.mineBoxCount[b.getUID()]);
+			result = result.add(probs.getMineBoxCount(pl, b.getUID()));
 		}
 		
-		BigInteger[] divide = result.divideAndRemainder(pl.solutionCount);
+		BigInteger[] divide = result.divideAndRemainder(probs.getSolutionCount(pl));
 		if (divide[1].signum() != 0) {
 			System.out.println("Min Box Count divide has non-zero remainder " + divide[1]);
 		}
@@ -854,23 +1371,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		return divide[0].intValue();
 	}
 	
-	// return any witness which hasn't been processed
-	private NextWitness findFirstWitness() {
-		
-		for (Witness w: witnesses) {
-			if (!w.isProcessed()) {
-				return new NextWitness(w);
-			}
-		}
-		
-		// if we are here all witness have been processed
-		return null;
-
-	}
-	
-	
 	// look for the next witness to process
-	private NextWitness findNextWitness(NextWitness prevWitness) {
+	private NextWitness findNextWitness(EdgeGroup group) {
 		
 		// flag the last set of details as processed
 		//prevWitness.witness.setProcessed(true);
@@ -882,7 +1384,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		Witness bestWitness = null;
 		
 		// and find a witness which is on the boundary of what has already been processed
-		for (Box b: boxes) {
+		for (Box b: group.boxes) {
 			if (b.isProcessed()) {
 				for (Witness w: b.getWitnesses()) {
 					if (!w.isProcessed()) {
@@ -907,43 +1409,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			return new NextWitness(bestWitness);
 		}
 		
-		// if we are down here then there is no witness which is on the boundary, so we have processed a complete set of independent witnesses 
-		
-		independentGroups++;
-		
-		// since we have calculated all the mines in an independent set of witnesses we can crunch them down and store them for later
-		
-		// before we crunch everything down check for dead tiles
-		if (CHECK_FOR_DEAD_LOCATIONS) {
-			checkCandidateDeadLocations(canDoDeadTileAnalysis);
-			//checkEdgeIsDead();
-		}
-		
-		// if we haven't compressed yet then do it now
-		if (canDoDeadTileAnalysis) {
-			MergeSorter sorter = new MergeSorter();
-			workingProbs = crunchByMineCount(workingProbs, sorter);
-		} else {
-			canDoDeadTileAnalysis = true;
-		}
-		
-		// get an unprocessed witness
-		NextWitness nw =  findFirstWitness();
-		
-		// only crunch it down for non-trivial probability lines unless it is the last set - this is an efficiency decision
-		//if (workingProbs.size() > 1 || nw == null) {
-		storeProbabilities();
-		
-		// reset the working array so we can start building up one for the new set of witnesses
-		workingProbs.clear();
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
-		
-		// reset the mask indicating that no boxes have been processed 
-		mask = new boolean[boxCount]; 
-		//}
-
-		// return the next witness to process
-		return nw;
+		// if we are down here then there is no witness which is on the boundary, so we have processed the complete group
+		return null;
 		
 	}
 	
@@ -979,6 +1446,11 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		return this.offEdgeBest;
 	}
 	
+	@Override
+	protected boolean isCancelled() {
+		return this.cancelled;
+	}
+	
 	/**
 	 * true if a 100% certain move has been found
 	 * @return
@@ -1036,7 +1508,10 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 	
 	
-	private void checkCandidateDeadLocations(boolean checkPossible) {
+	private void checkCandidateDeadLocations(EdgeGroup group) {
+		
+		boolean checkPossible = group.canDoDeadTileAnalysis;
+		boolean[] mask = group.mask;
 		
 		boolean completeScan;
 		if (squaresLeft == 0) {
@@ -1058,7 +1533,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		}
 
 		
-		for (DeadCandidate dc: deadCandidates) {
+		for (DeadCandidate dc: group.deadCandidates) {
 			
 			if (dc.isAlive) {  // if this location isn't dead then no need to check any more
 				continue;
@@ -1066,19 +1541,19 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			
 			// only do the check if all the boxes have been analysed in this probability iteration
 			int boxesInScope = 0;
-			for (Box b: dc.goodBoxes) {
-				if (mask[b.getUID()]) {
+			for (int uid: dc.goodUids) {
+				if (mask[uid]) {
 					boxesInScope++;
 				}
 			}
-			for (Box b: dc.badBoxes) {
-				if (mask[b.getUID()]) {
+			for (int uid: dc.badUids) {
+				if (mask[uid]) {
 					boxesInScope++;
 				}
 			}
 			if (boxesInScope == 0) {
 				continue;
-			} else if (boxesInScope != dc.goodBoxes.size() + dc.badBoxes.size()) {
+			} else if (boxesInScope != dc.goodUids.length + dc.badUids.length) {
 				boardState.display("Location " + dc.candidate.display() + " has some boxes in scope and some out of scope so assumed alive");
 				dc.isAlive = true;
 				continue;
@@ -1093,15 +1568,16 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			
 			boolean okay = true;
 			int mineCount = 0;
-			line: for (ProbabilityLine pl: workingProbs) {
+			ProbabilityLineTable probs = group.workingProbs;
+			line: for (int pl=0; pl < probs.size(); pl++) {
 
-				if (completeScan && pl.mineCount != minesLeft) {
+				if (completeScan && probs.mineCount[pl] != minesLeft) {
 					continue;
 				}
 				
 				// ignore probability lines where the candidate is a mine
 				//if (pl.mineBoxCount[dc.myBox.getUID()].compareTo(BigInteger.valueOf(dc.myBox.getSquares().size())) == 0) {
-				if (pl.allocatedMines[dc.myBox.getUID()] == dc.myBox.getSquares().size()) {
+				if (probs.getAllocatedMines(pl, dc.myUid) == dc.mySize) {
 					//boardState.display("Location " + dc.candidate.display() + " I'm a mine on this Probability line");
 					mineCount++;
 					continue line;
@@ -1109,17 +1585,11 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 				
 				
 				// all the bad boxes must be zero
-				for (Box b: dc.badBoxes) {
+				for (int i=0; i < dc.badUids.length; i++) {
 					
-					BigInteger requiredMines;
-                    //int requiredMines;
-                    if (b.getUID() == dc.myBox.getUID()) {
-                        requiredMines = BigInteger.valueOf(b.getSquares().size() - 1).multiply(pl.solutionCount);
-                    } else {
-                        requiredMines = BigInteger.valueOf(b.getSquares().size()).multiply(pl.solutionCount);
-                    }
+					int uid = dc.badUids[i];
 					
-					if (pl.mineBoxCount[b.getUID()].signum() != 0 && pl.mineBoxCount[b.getUID()].compareTo(requiredMines) != 0) {
+					if (probs.mineBoxSignum(pl, uid) != 0 && !probs.hasMinesInBox(pl, uid, dc.badRequired[i])) {
 						boardState.display("Location " + dc.candidate.display() + " is not dead because a bad box is neither empty nor full of mines");
 						okay = false;
 						break line;
@@ -1129,9 +1599,9 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 				//BigInteger tally = BigInteger.ZERO;
 				int tally = 0;
 				// the number of mines in the good boxes must always be the same
-				for (Box b: dc.goodBoxes) {
+				for (int uid: dc.goodUids) {
 					//tally = tally.add(pl.mineBoxCount[b.getUID()]);
-					tally = tally + pl.allocatedMines[b.getUID()];
+					tally = tally + probs.getAllocatedMines(pl, uid);
 				}
 				//boardState.display("Location " + dc.candidate.display() + " has mine tally " + tally);
 				if (dc.firstCheck) {
@@ -1140,7 +1610,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 				} else {
 					if (dc.total != tally) {
 						boardState.display("Location " + dc.candidate.display() + " is not dead because the sum of mines in good boxes is not constant. Was "
-					                       + dc.total + " now " + tally + ". Mines in probability line " + pl.mineCount);
+					                       + dc.total + " now " + tally + ". Mines in probability line " + probs.mineCount[pl]);
 						okay = false;
 						break;
 					}
@@ -1148,11 +1618,11 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 			}
 			
 			// if a check failed or this tile is a mine for every solution then it is alive
-			if (!okay || mineCount == this.workingProbs.size()) {
+			if (!okay || mineCount == probs.size()) {
 				dc.isAlive = true;
 			} else {
 				// add the dead locations we found 
-				deadLocations = deadLocations.add(dc.candidate);
+				group.deadLocations.add(dc.candidate);
 				boardState.display(dc.candidate.display() + " is dead");
 			}
 			
@@ -1161,11 +1631,11 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 
 	// an edge is dead if every tile on the edge is dead
-	private boolean checkEdgeIsDead() {
+	private boolean checkEdgeIsDead(EdgeGroup group) {
 		
 		// For each box on this edge check each of the tiles in it, if any are alive then the edge is alive
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {   
+        for (int i = 0; i < group.mask.length; i++) {
+            if (group.mask[i]) {   
             	for (Square tile: boxes.get(i).getSquares()) {
             		if (!deadLocations.contains(tile)) {
             			return false;
@@ -1175,8 +1645,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
         }
 
         boardState.display("The following area is dead - all guesses in the area are equal");
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {   
+        for (int i = 0; i < group.mask.length; i++) {
+            if (group.mask[i]) {   
             	for (Square tile: boxes.get(i).getSquares()) {
             		boardState.display("Location " + tile.display());
             		boardState.addIsolatedDeadTile(tile);
@@ -1188,7 +1658,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	}
 	
 	// an edge is isolated if every tile on it is completely surrounded by boxes also on the same edge
-	private boolean checkEdgeIsIsolated() {
+	private boolean checkEdgeIsIsolated(EdgeGroup group) {
 		
 		Set<Location> edgeTiles = new HashSet<>();
 		Set<Location> edgeWitnesses = new HashSet<>();
@@ -1196,8 +1666,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 		boolean everything = true;
 		
 		// load each tile on this edge into a set
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {  
+        for (int i = 0; i < group.mask.length; i++) {
+            if (group.mask[i]) {  
             	edgeTiles.addAll(boxes.get(i).getSquares());
             	edgeWitnesses.addAll(boxes.get(i).getWitnesses());
              } else {
@@ -1213,8 +1683,8 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
         
         
 		// check whether every tile adjacent to the tiles on the edge is itself on the edge
-        for (int i = 0; i < this.mask.length; i++) {
-            if (this.mask[i]) {   
+        for (int i = 0; i < group.mask.length; i++) {
+            if (group.mask[i]) {   
             	for (Square tile: boxes.get(i).getSquares()) {
             		if (!edgeTiles.containsAll(boardState.getAdjacentUnrevealedSquares(tile))) {
             			boardState.display("Not isolated because a tile's adjacent tiles isn't on the edge: " + tile.display());
@@ -1228,7 +1698,7 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
         
         List<Location> tiles = new ArrayList<>(edgeTiles);
         List<Location> witnesses = new ArrayList<>(edgeWitnesses);
-        int mines = workingProbs.get(0).mineCount;
+        int mines = group.workingProbs.mineCount[0];
         
         // build a web of the isolated edge and use it to build a brute force
         WitnessWeb isolatedEdge = new WitnessWeb(boardState, witnesses, tiles);
@@ -1287,6 +1757,26 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 
 		for (DeadCandidate dc: deadCandidates) {
 			boardState.display(dc.candidate.display() + " is candidate dead with " + dc.goodBoxes.size() + " good boxes and " + dc.badBoxes.size() + " bad boxes");
+			
+			dc.myUid = dc.myBox.getUID();
+			dc.mySize = dc.myBox.getSquares().size();
+			
+			dc.goodUids = new int[dc.goodBoxes.size()];
+			for (int i=0; i < dc.goodUids.length; i++) {
+				dc.goodUids[i] = dc.goodBoxes.get(i).getUID();
+			}
+			
+			dc.badUids = new int[dc.badBoxes.size()];
+			dc.badRequired = new int[dc.badBoxes.size()];
+			for (int i=0; i < dc.badUids.length; i++) {
+				Box b = dc.badBoxes.get(i);
+				dc.badUids[i] = b.getUID();
+				if (b.getUID() == dc.myUid) {
+					dc.badRequired[i] = b.getSquares().size() - 1;
+				} else {
+					dc.badRequired[i] = b.getSquares().size();
+				}
+			}
 		}
 		
 	}
@@ -1355,9 +1845,24 @@ public class ProbabilityEngineFast extends ProbabilityEngineModel {
 	 * @return
 	 */
 	protected BigInteger getSolutionCount() {
+		if (exactCountPending) {
+			finalSolutionsCount = exactSolutionCount();
+			exactCountPending = false;
+		}
 		return finalSolutionsCount;
 	}
 	
+	@Override
+	protected boolean isSolutionCountAtMost(long limit) {
+		
+		// the log of the count is only accurate to a few parts in a billion, so only build the exact count when it is that close
+		if (exactCountPending && logSolutionCount > Math.log(limit) + 1e-6) {
+			return false;
+		}
+		
+		return super.isSolutionCountAtMost(limit);
+	}
+	
 	/**
 	 * The duration to do the processing in milliseconds
 	 * @return
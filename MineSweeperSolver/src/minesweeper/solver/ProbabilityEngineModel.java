@@ -27,5 +27,17 @@ abstract public class ProbabilityEngineModel {
 	abstract protected LinkedLocation getLinkedLocation(Location tile);
 	abstract protected List<BruteForce> getIsolatedEdges();
 	abstract protected boolean isBestGuessOffEdge();
+	abstract protected boolean isCancelled();     // true if processing was stopped before the probabilities were calculated
+	
+	/**
+	 * True if there are no more than this many solutions. Cheaper than comparing the solution count when the count is only found if needed.
+	 */
+	protected boolean isSolutionCountAtMost(long limit) {
+		return getSolutionCount().compareTo(BigInteger.valueOf(limit)) <= 0;
+	}
+	
+	protected boolean hasSolutions() {
+		return !isSolutionCountAtMost(0);
+	}
 
 }
@@ -0,0 +1,696 @@
+package minesweeper.solver;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A table of probability lines held as contiguous primitive columns rather than one object per line.
+ * Each line (row) holds the number of mines it places, the number of solutions it represents, the mines allocated to each box
+ * and optionally the number of mines in each box summed over all its solutions.
+ *
+ * The counts are held as longs and a row is only promoted to BigIntegers when a calculation would overflow.
+ *
+ * Tables are pooled per thread so the columns can be reused from one merge to the next and from one move to the next. Each thread
+ * only keeps a few MB of columns, so the memory held stays small however many threads the solver and the bulk runs use.
+ *
+ * If hash keys are supplied each row also holds a Zobrist hash of the mines allocated to its boxes, the XOR of the key for each box and
+ * the number of mines placed in it. The keys are derived from a seed, so the hashes are the same from one run to the next.
+ *
+ * @author David
+ *
+ */
+public class ProbabilityLineTable {
+
+	// the largest solution count a primitive row can hold. A box has at most 8 squares so this guarantees the mine box counts can't overflow either
+	protected static final long MAX_PRIMITIVE_SOLUTIONS = Long.MAX_VALUE / 8;
+
+	private static final int INITIAL_ROWS = 64;
+	private static final int MAX_POOLED = 8;
+	private static final long MAX_POOLED_BYTES = 4L << 20;  // the most memory each thread's pool holds on to
+
+	protected static final int KEYS_PER_BOX = 9;            // a box can hold 0 to 8 mines
+
+	// the tables a thread has released and the memory their columns use
+	private static class Pool {
+		private final ArrayDeque<ProbabilityLineTable> tables = new ArrayDeque<>();
+		private long bytes = 0;
+	}
+
+	private static final ThreadLocal<Pool> POOL = new ThreadLocal<Pool>() {
+		@Override
+		protected Pool initialValue() {
+			return new Pool();
+		}
+	};
+
+	protected int width;                  // the number of boxes
+	protected int size;                   // the number of rows in use
+	private int capacity;                 // the number of rows the columns can hold
+
+	private boolean withCounts;           // hold the mine box counts
+	private boolean withHashes;           // hold the hashes
+	private long[] hashKeys;              // the Zobrist key for each box and number of mines, box * KEYS_PER_BOX + mines
+
+	protected int[] mineCount;
+	protected long[] solutionCount;
+	protected byte[] allocatedMines;      // the number of mines originally allocated to each box, row * width + box
+	protected long[] mineBoxCount;        // the number of mines in each box summed over the row's solutions, row * width + box
+	protected long[] hash;                // the Zobrist hash of the row's allocated mines
+	protected long[] hashCount;           // row * width + box
+
+	private int[] slots;                  // open addressing table used when merging rows, holds the result row + 1 or 0 if empty
+	
+	private boolean[] big;                // true if the row has been promoted
+	private BigInteger[] bigSolutionCount;
+	private BigInteger[] bigMineBoxCount;
+	private int promotions;
+	private long pooledBytes;             // the memory the columns used when the table was pooled
+
+	private ProbabilityLineTable() {
+	}
+
+	/**
+	 * Get an empty table from this thread's pool. The rows are only hashed if the hash keys are supplied.
+	 */
+	protected static ProbabilityLineTable acquire(int width, boolean withCounts, long[] hashKeys) {
+
+		Pool pool = POOL.get();
+		ProbabilityLineTable table = pool.tables.poll();
+		if (table == null) {
+			table = new ProbabilityLineTable();
+		} else {
+			pool.bytes = pool.bytes - table.pooledBytes;
+		}
+
+		table.width = width;
+		table.withCounts = withCounts;
+		table.withHashes = (hashKeys != null);
+		table.hashKeys = hashKeys;
+		table.size = 0;
+		table.promotions = 0;
+		table.capacity = 0;
+		table.ensureCapacity(INITIAL_ROWS);
+
+		return table;
+	}
+
+	/**
+	 * Return the table to this thread's pool. The table mustn't be used afterwards.
+	 */
+	protected void release() {
+
+		// clear any references to BigIntegers so they can be collected
+		if (bigSolutionCount != null) {
+			Arrays.fill(bigSolutionCount, null);
+		}
+		if (bigMineBoxCount != null) {
+			Arrays.fill(bigMineBoxCount, null);
+		}
+		hashKeys = null;
+
+		// a table too big for what is left of the budget is dropped and its columns collected
+		Pool pool = POOL.get();
+		long bytes = columnBytes();
+		if (pool.tables.size() < MAX_POOLED && pool.bytes + bytes <= MAX_POOLED_BYTES) {
+			pooledBytes = bytes;
+			pool.bytes = pool.bytes + bytes;
+			pool.tables.push(this);
+		}
+	}
+
+	// the memory used by the columns, which can be longer than the capacity when they were reused from a larger table
+	private long columnBytes() {
+
+		long bytes = 0;
+		bytes = bytes + (mineCount == null ? 0 : 4L * mineCount.length);
+		bytes = bytes + (solutionCount == null ? 0 : 8L * solutionCount.length);
+		bytes = bytes + (allocatedMines == null ? 0 : allocatedMines.length);
+		bytes = bytes + (mineBoxCount == null ? 0 : 8L * mineBoxCount.length);
+		bytes = bytes + (hash == null ? 0 : 8L * hash.length);
+		bytes = bytes + (hashCount == null ? 0 : 8L * hashCount.length);
+		bytes = bytes + (slots == null ? 0 : 4L * slots.length);
+		bytes = bytes + (big == null ? 0 : big.length);
+		bytes = bytes + (bigSolutionCount == null ? 0 : 8L * bigSolutionCount.length);
+		bytes = bytes + (bigMineBoxCount == null ? 0 : 8L * bigMineBoxCount.length);
+
+		return bytes;
+	}
+
+	protected int size() {
+		return size;
+	}
+
+	protected boolean isEmpty() {
+		return size == 0;
+	}
+
+	protected int getPromotions() {
+		return promotions;
+	}
+
+	// make sure the columns can hold at least this many rows
+	private void ensureCapacity(int rows) {
+
+		if (rows <= capacity) {
+			return;
+		}
+
+		int newCapacity = Math.max(rows, Math.max(INITIAL_ROWS, capacity * 2));
+		int cells = newCapacity * Math.max(width, 1);
+
+		mineCount = grow(mineCount, newCapacity);
+		solutionCount = grow(solutionCount, newCapacity);
+		allocatedMines = grow(allocatedMines, cells);
+		big = grow(big, newCapacity);
+
+		if (withCounts) {
+			mineBoxCount = grow(mineBoxCount, cells);
+		}
+		if (withHashes) {
+			hash = grow(hash, newCapacity);
+			hashCount = grow(hashCount, cells);
+		}
+		if (bigSolutionCount != null) {
+			bigSolutionCount = Arrays.copyOf(bigSolutionCount, Math.max(bigSolutionCount.length, newCapacity));
+			bigMineBoxCount = Arrays.copyOf(bigMineBoxCount, Math.max(bigMineBoxCount.length, cells));
+		}
+
+		capacity = newCapacity;
+	}
+
+	// the pooled columns may already be big enough, only the rows in use need to be kept
+	private int[] grow(int[] column, int length) {
+		if (column != null && column.length >= length) {
+			return column;
+		}
+		int[] result = new int[length];
+		if (column != null && size > 0) {
+			System.arraycopy(column, 0, result, 0, size);
+		}
+		return result;
+	}
+
+	private long[] grow(long[] column, int length) {
+		if (column != null && column.length >= length) {
+			return column;
+		}
+		long[] result = new long[length];
+		if (column != null && size > 0) {
+			System.arraycopy(column, 0, result, 0, Math.min(column.length, length));
+		}
+		return result;
+	}
+
+	private byte[] grow(byte[] column, int length) {
+		if (column != null && column.length >= length) {
+			return column;
+		}
+		byte[] result = new byte[length];
+		if (column != null && size > 0) {
+			System.arraycopy(column, 0, result, 0, Math.min(column.length, length));
+		}
+		return result;
+	}
+
+	private boolean[] grow(boolean[] column, int length) {
+		if (column != null && column.length >= length) {
+			return column;
+		}
+		boolean[] result = new boolean[length];
+		if (column != null && size > 0) {
+			System.arraycopy(column, 0, result, 0, size);
+		}
+		return result;
+	}
+
+	// add an empty row and return its index
+	private int newRow() {
+
+		ensureCapacity(size + 1);
+
+		int row = size++;
+		int start = row * width;
+
+		mineCount[row] = 0;
+		solutionCount[row] = 0;
+		big[row] = false;
+		Arrays.fill(allocatedMines, start, start + width, (byte) 0);
+		if (withCounts) {
+			Arrays.fill(mineBoxCount, start, start + width, 0);
+		}
+		if (withHashes) {
+			hash[row] = 0;
+			Arrays.fill(hashCount, start, start + width, 0);
+		}
+
+		return row;
+	}
+
+	/**
+	 * Add a row with no mines and the given number of solutions
+	 */
+	protected int addRow(long solutions) {
+
+		int row = newRow();
+		solutionCount[row] = solutions;
+
+		return row;
+	}
+
+	/**
+	 * Add a copy of a row from another table
+	 */
+	protected int addCopy(ProbabilityLineTable src, int srcRow) {
+		return addExtended(src, srcRow, 1, 0);
+	}
+
+	/**
+	 * Add a copy of a row from another table with its solutions multiplied by the multiplier and the extra mines added to its mine count
+	 */
+	protected int addExtended(ProbabilityLineTable src, int srcRow, long multiplier, int extraMines) {
+
+		int row = newRow();
+		int start = row * width;
+		int srcStart = srcRow * width;
+
+		mineCount[row] = src.mineCount[srcRow] + extraMines;
+		System.arraycopy(src.allocatedMines, srcStart, allocatedMines, start, width);
+
+		long solutions = -1;
+		if (!src.big[srcRow]) {
+			solutions = multiplySolutions(src.solutionCount[srcRow], multiplier);
+		}
+
+		if (solutions != -1) {
+			solutionCount[row] = solutions;
+			if (withCounts) {
+				if (multiplier == 1) {
+					System.arraycopy(src.mineBoxCount, srcStart, mineBoxCount, start, width);
+				} else {
+					for (int i=0; i < width; i++) {
+						mineBoxCount[start + i] = src.mineBoxCount[srcStart + i] * multiplier;
+					}
+				}
+			}
+		} else {
+			BigInteger bigMultiplier = BigInteger.valueOf(multiplier);
+			makeBig(row);
+			bigSolutionCount[row] = src.getSolutionCount(srcRow).multiply(bigMultiplier);
+			if (withCounts) {
+				for (int i=0; i < width; i++) {
+					bigMineBoxCount[start + i] = src.getMineBoxCount(srcRow, i).multiply(bigMultiplier);
+				}
+			}
+		}
+
+		if (withHashes) {
+			hash[row] = src.hash[srcRow];
+			System.arraycopy(src.hashCount, srcStart, hashCount, start, width);
+		}
+
+		return row;
+	}
+
+	/**
+	 * Add a row which combines a row from each of two independent tables, so the solutions are multiplied together
+	 */
+	protected int addProduct(ProbabilityLineTable t1, int row1, ProbabilityLineTable t2, int row2) {
+
+		int row = newRow();
+		int start = row * width;
+		int start1 = row1 * width;
+		int start2 = row2 * width;
+
+		mineCount[row] = t1.mineCount[row1] + t2.mineCount[row2];
+
+		long solutions = -1;
+		if (!t1.big[row1] && !t2.big[row2]) {
+			solutions = multiplySolutions(t1.solutionCount[row1], t2.solutionCount[row2]);
+		}
+
+		if (solutions != -1) {
+			solutionCount[row] = solutions;
+			if (withCounts) {
+				long sc1 = t1.solutionCount[row1];
+				long sc2 = t2.solutionCount[row2];
+				for (int i=0; i < width; i++) {
+					mineBoxCount[start + i] = t1.mineBoxCount[start1 + i] * sc2 + t2.mineBoxCount[start2 + i] * sc1;
+				}
+			}
+		} else {
+			BigInteger sc1 = t1.getSolutionCount(row1);
+			BigInteger sc2 = t2.getSolutionCount(row2);
+			makeBig(row);
+			bigSolutionCount[row] = sc1.multiply(sc2);
+			if (withCounts) {
+				for (int i=0; i < width; i++) {
+					bigMineBoxCount[start + i] = t1.getMineBoxCount(row1, i).multiply(sc2).add(t2.getMineBoxCount(row2, i).multiply(sc1));
+				}
+			}
+		}
+
+		if (withHashes) {
+			hash[row] = t1.hash[row1] ^ t2.hash[row2];   // the rows have mines in different boxes
+			for (int i=0; i < width; i++) {
+				hashCount[start + i] = t1.hashCount[start1 + i] + t2.hashCount[start2 + i];
+			}
+		}
+
+		return row;
+	}
+
+	/**
+	 * Combine a row from another table into this row. Both rows must have the same mines in the boxes which are still being processed.
+	 * Only the boxes in the mask are added.
+	 */
+	protected void combine(int row, ProbabilityLineTable src, int srcRow, boolean[] mask) {
+		
+		addCounts(row, src, srcRow, mask);
+		
+		if (withHashes) {
+			int start = row * width;
+			int srcStart = srcRow * width;
+			for (int i=0; i < width; i++) {
+				if (mask[i]) {  // if this box has been involved in this solution - if we don't do this the hash gets corrupted by boxes = 0 mines because they weren't part of this edge
+					if (src.mineBoxSignum(srcRow, i) == 0) {
+						hashCount[start + i] = hashCount[start + i] - src.hash[srcRow];   // treat no mines as -1 rather than zero
+					} else if (src.big[srcRow]) {
+						hashCount[start + i] = hashCount[start + i] + src.bigMineBoxCount[srcStart + i].longValue() * src.hash[srcRow];
+					} else {
+						hashCount[start + i] = hashCount[start + i] + src.mineBoxCount[srcStart + i] * src.hash[srcRow];
+					}
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Add everything on a row from another table to this row
+	 */
+	protected void accumulate(int row, ProbabilityLineTable src, int srcRow) {
+		
+		addCounts(row, src, srcRow, null);
+		
+		if (withHashes) {
+			int start = row * width;
+			int srcStart = srcRow * width;
+			for (int i=0; i < width; i++) {
+				hashCount[start + i] = hashCount[start + i] + src.hashCount[srcStart + i];
+			}
+		}
+		
+	}
+	
+	// add the solutions of a row from another table to this row. Only the boxes in the mask are added, or all of them if the mask is null.
+	private void addCounts(int row, ProbabilityLineTable src, int srcRow, boolean[] mask) {
+		int start = row * width;
+		int srcStart = srcRow * width;
+
+		long solutions = -1;
+		if (!big[row] && !src.big[srcRow]) {
+			solutions = addSolutions(solutionCount[row], src.solutionCount[srcRow]);
+		}
+
+		if (solutions != -1) {
+			solutionCount[row] = solutions;
+			if (withCounts) {
+				for (int i=0; i < width; i++) {
+					if (mask == null || mask[i]) {
+						mineBoxCount[start + i] = mineBoxCount[start + i] + src.mineBoxCount[srcStart + i];
+					}
+				}
+			}
+		} else {
+			promote(row);
+			bigSolutionCount[row] = bigSolutionCount[row].add(src.getSolutionCount(srcRow));
+			if (withCounts) {
+				for (int i=0; i < width; i++) {
+					if (mask == null || mask[i]) {
+						bigMineBoxCount[start + i] = bigMineBoxCount[start + i].add(src.getMineBoxCount(srcRow, i));
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Combine this table's rows into the result table so there is one row for each mine count and set of mines in the checked boxes.
+	 * This is done in a single pass using an open addressing hash table keyed on that signature rather than by sorting the rows.
+	 * The combined rows are in the order their signature was first seen.
+	 */
+	protected void mergeInto(ProbabilityLineTable result, int[] checks, boolean[] mask) {
+		
+		// keep the table at most half full
+		int tableSize = Integer.highestOneBit(Math.max(size, 1)) << 2;
+		if (slots == null || slots.length < tableSize) {
+			slots = new int[tableSize];
+		} else {
+			Arrays.fill(slots, 0, tableSize, 0);
+		}
+		int tableMask = tableSize - 1;
+		
+		for (int row=0; row < size; row++) {
+			
+			int slot = signature(row, checks) & tableMask;
+			
+			while (true) {
+				int target = slots[slot] - 1;
+				if (target == -1) {   // a new signature
+					slots[slot] = result.addCopy(this, row) + 1;
+					break;
+				} else if (sameSignature(result, target, row, checks)) {
+					result.combine(target, this, row, mask);
+					break;
+				}
+				slot = (slot + 1) & tableMask;
+			}
+			
+		}
+		
+	}
+	
+	// a hash of the row's mine count and the mines in the checked boxes
+	private int signature(int row, int[] checks) {
+		
+		int start = row * width;
+		
+		long hash = mineCount[row] * 0x9E3779B97F4A7C15L;
+		for (int i=0; i < checks.length; i++) {
+			hash = (hash ^ allocatedMines[start + checks[i]]) * 0x100000001B3L;
+		}
+		
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	private boolean sameSignature(ProbabilityLineTable other, int otherRow, int row, int[] checks) {
+		
+		if (mineCount[row] != other.mineCount[otherRow]) {
+			return false;
+		}
+		
+		int start = row * width;
+		int otherStart = otherRow * width;
+		for (int i=0; i < checks.length; i++) {
+			if (allocatedMines[start + checks[i]] != other.allocatedMines[otherStart + checks[i]]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Place the mines in the box for every solution on the row
+	 */
+	protected void setMinesInBox(int row, int box, int mines) {
+
+		int cell = row * width + box;
+
+		allocatedMines[cell] = (byte) mines;
+
+		if (withHashes) {
+			hash[row] = hash[row] ^ hashKeys[box * KEYS_PER_BOX + mines];
+		}
+
+		if (withCounts) {
+			if (big[row]) {
+				bigMineBoxCount[cell] = BigInteger.valueOf(mines).multiply(bigSolutionCount[row]);
+			} else {
+				mineBoxCount[cell] = mines * solutionCount[row];
+			}
+		}
+	}
+
+	/**
+	 * Add a row with no mines and the given number of solutions, which is held in BigIntegers if it is too large
+	 */
+	protected int addRow(BigInteger solutions) {
+		
+		if (solutions.compareTo(BigInteger.valueOf(MAX_PRIMITIVE_SOLUTIONS)) <= 0) {
+			return addRow(solutions.longValue());
+		}
+		
+		int row = newRow();
+		makeBig(row);
+		bigSolutionCount[row] = solutions;
+		int start = row * width;
+		for (int i=0; i < width; i++) {
+			bigMineBoxCount[start + i] = BigInteger.ZERO;
+		}
+		
+		return row;
+	}
+	
+	protected void setMineBoxCount(int row, int box, BigInteger count) {
+		if (big[row]) {
+			bigMineBoxCount[row * width + box] = count;
+		} else {
+			mineBoxCount[row * width + box] = count.longValue();
+		}
+	}
+	
+	protected int getAllocatedMines(int row, int box) {
+		return allocatedMines[row * width + box];
+	}
+
+	protected boolean isBig(int row) {
+		return big[row];
+	}
+
+	protected BigInteger getSolutionCount(int row) {
+		if (big[row]) {
+			return bigSolutionCount[row];
+		} else {
+			return BigInteger.valueOf(solutionCount[row]);
+		}
+	}
+
+	protected BigInteger getMineBoxCount(int row, int box) {
+		if (big[row]) {
+			return bigMineBoxCount[row * width + box];
+		} else {
+			return BigInteger.valueOf(mineBoxCount[row * width + box]);
+		}
+	}
+
+	protected int mineBoxSignum(int row, int box) {
+		if (big[row]) {
+			return bigMineBoxCount[row * width + box].signum();
+		} else {
+			return Long.signum(mineBoxCount[row * width + box]);
+		}
+	}
+
+	// true if every solution on this row has exactly this many mines in the box
+	protected boolean hasMinesInBox(int row, int box, int mines) {
+		if (big[row]) {
+			return bigMineBoxCount[row * width + box].compareTo(BigInteger.valueOf(mines).multiply(bigSolutionCount[row])) == 0;
+		} else {
+			return mineBoxCount[row * width + box] == mines * solutionCount[row];
+		}
+	}
+
+	// the proportion of the box's squares which are mines averaged over the solutions on this row
+	protected double getMineRatio(int row, int box, int boxSize) {
+		if (mineBoxSignum(row, box) == 0) {
+			return 0d;
+		} else if (hasMinesInBox(row, box, boxSize)) {
+			return 1d;
+		} else if (big[row]) {
+			return Solver.ratio(bigMineBoxCount[row * width + box], bigSolutionCount[row].multiply(BigInteger.valueOf(boxSize)));
+		} else {
+			return (double) mineBoxCount[row * width + box] / solutionCount[row] / boxSize;
+		}
+	}
+
+	// the number of mines in the box for every solution on this row, which must be the same for them all
+	protected int getMinesInBox(int row, int box) {
+
+		int cell = row * width + box;
+
+		if (big[row]) {
+			BigInteger[] divide = bigMineBoxCount[cell].divideAndRemainder(bigSolutionCount[row]);
+			if (divide[1].signum() != 0) {
+				System.out.println("Min Box Count divide has non-zero remainder " + divide[1]);
+			}
+			return divide[0].intValue();
+		} else {
+			if (mineBoxCount[cell] % solutionCount[row] != 0) {
+				System.out.println("Min Box Count divide has non-zero remainder " + mineBoxCount[cell] % solutionCount[row]);
+			}
+			return (int) (mineBoxCount[cell] / solutionCount[row]);
+		}
+	}
+
+	// mark the row as held in BigIntegers
+	private void makeBig(int row) {
+
+		if (bigSolutionCount == null) {
+			bigSolutionCount = new BigInteger[capacity];
+			bigMineBoxCount = new BigInteger[capacity * Math.max(width, 1)];
+		}
+
+		big[row] = true;
+		promotions++;
+	}
+
+	// convert a primitive row to use BigIntegers
+	private void promote(int row) {
+
+		if (big[row]) {
+			return;
+		}
+
+		int start = row * width;
+
+		makeBig(row);
+		bigSolutionCount[row] = BigInteger.valueOf(solutionCount[row]);
+		if (withCounts) {
+			for (int i=0; i < width; i++) {
+				bigMineBoxCount[start + i] = BigInteger.valueOf(mineBoxCount[start + i]);
+			}
+		}
+	}
+
+	/**
+	 * A well mixed 64 bit key derived from the seed and two values, using the SplitMix64 finaliser
+	 */
+	protected static long zobristKey(long seed, int a, int b) {
+
+		long z = seed + 0x9E3779B97F4A7C15L * ((((long) a) << 32 | (b & 0xFFFFFFFFL)) + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+	}
+
+	// returns the product or -1 if it is too large to be held in a primitive row
+	private static long multiplySolutions(long a, long b) {
+		try {
+			long result = Math.multiplyExact(a, b);
+			if (result > MAX_PRIMITIVE_SOLUTIONS) {
+				return -1;
+			}
+			return result;
+		} catch (ArithmeticException e) {
+			return -1;
+		}
+	}
+
+	// returns the sum or -1 if it is too large to be held in a primitive row
+	private static long addSolutions(long a, long b) {
+		try {
+			long result = Math.addExact(a, b);
+			if (result > MAX_PRIMITIVE_SOLUTIONS) {
+				return -1;
+			}
+			return result;
+		} catch (ArithmeticException e) {
+			return -1;
+		}
+	}
+
+}
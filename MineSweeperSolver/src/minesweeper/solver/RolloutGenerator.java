@@ -26,35 +26,13 @@ public class RolloutGenerator {
 
 	private int[][] SMALL_COMBINATIONS = new int[][] {{1}, {1,1}, {1,2,1}, {1,3,3,1}, {1,4,6,4,1}, {1,5,10,10,5,1}, {1,6,15,20,15,6,1}, {1,7,21,35,35,21,7,1}, {1,8,28,56,70,56,28,8,1}};
 	
-	// used to hold a viable solution 
-	private class ProbabilityLine implements Comparable<ProbabilityLine> {
-		private int mineCount = 0;
-		private BigInteger solutionCount = BigInteger.ZERO;
-		private int[] allocatedMines  = new int[boxCount];   // this is the number of mines originally allocate to a box
-		private int weight;    // all lines normalized to sum to 1 million
-		
-		
-		private ProbabilityLine() {
-			this(BigInteger.ZERO);
-		}
-		
-		private ProbabilityLine(BigInteger solutionCount) {
-			this.solutionCount = solutionCount;
-		}
-		
-		@Override
-		// sort by the number of mines in the solution
-		public int compareTo(ProbabilityLine o) {
-			return this.mineCount - o.mineCount;
-		}
-	}
-	
 	// used to hold what we need to analyse next
 	private class NextWitness {
 		
 		private Witness witness;
 		private List<Box> newBoxes = new ArrayList<>();
 		private List<Box> oldBoxes = new ArrayList<>();
+		private int[] placed;    // the mines placed in each new box while distributing the missing mines
 		
 		private NextWitness(Witness w) {
 			
@@ -67,6 +45,8 @@ public class RolloutGenerator {
 					newBoxes.add(b);
 				}
 			}
+			
+			placed = new int[newBoxes.size()];
 
 		}
 	
@@ -74,7 +54,8 @@ public class RolloutGenerator {
 	
 	private long duration;
 	
-	private List<ProbabilityLine> workingProbs = new ArrayList<>(); // as we work through an independent set of witnesses probabilities are held here
+	private ProbabilityLineTable workingProbs; // as we work through an independent set of witnesses probabilities are held here
+	private int[] weights;    // the weight of each line, all lines normalized to sum to 1 million
 	
 	//when set to true indicates that the box has been part of this analysis
 	private boolean[] mask;           
@@ -172,7 +153,8 @@ public class RolloutGenerator {
 		long startTime = System.currentTimeMillis();
 		
 		// add an empty probability line to get us started
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+		workingProbs = ProbabilityLineTable.acquire(boxCount, false, null);
+		workingProbs.addRow(1);
 		
 		// create an empty mask - indicating no boxes have been processed
 		mask = new boolean[boxCount];           
@@ -219,21 +201,25 @@ public class RolloutGenerator {
 		
 		BigInteger hcf = null;
 		
+		BigInteger[] solutionCount = new BigInteger[workingProbs.size()];
+		
 		// calculate how many solutions are in each line / Highest common divisor
-		for (ProbabilityLine pl: workingProbs) {
+		for (int pl=0; pl < workingProbs.size(); pl++) {
 			
-			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+			int mineCount = workingProbs.mineCount[pl];
+			
+			if (mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
 				
-				BigInteger mult = Solver.combination(minesLeft - pl.mineCount, tilesOfEdge);  //# of ways the rest of the board can be formed
+				BigInteger mult = Solver.combination(minesLeft - mineCount, tilesOfEdge);  //# of ways the rest of the board can be formed
 				
-				pl.solutionCount = pl.solutionCount.multiply(mult);
+				solutionCount[pl] = workingProbs.getSolutionCount(pl).multiply(mult);
 				
-				totalTally = totalTally.add(pl.solutionCount);
+				totalTally = totalTally.add(solutionCount[pl]);
 				
 				if (hcf == null) {
-					hcf = pl.solutionCount;
+					hcf = solutionCount[pl];
 				} else {
-					hcf = hcf.gcd(pl.solutionCount);
+					hcf = hcf.gcd(solutionCount[pl]);
 				}
 
 			}
@@ -241,19 +227,23 @@ public class RolloutGenerator {
 		
 		BigInteger million = BigInteger.valueOf(1000000);
 		
+		weights = new int[workingProbs.size()];
+		
 		// display the lines after dividing by Highest common divisor
-		for (ProbabilityLine pl: workingProbs) {
+		for (int pl=0; pl < workingProbs.size(); pl++) {
+			
+			int mineCount = workingProbs.mineCount[pl];
 			
-			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+			if (mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
 				
-				pl.weight = pl.solutionCount.multiply(million).divide(totalTally).intValue();
+				weights[pl] = solutionCount[pl].multiply(million).divide(totalTally).intValue();
 				
-				totalWeight = totalWeight + pl.weight;
+				totalWeight = totalWeight + weights[pl];
 				
-				String display = "Mines=" + pl.mineCount + " Weight=" + pl.weight;
-				for (int i=0; i < pl.allocatedMines.length; i++) {
+				String display = "Mines=" + mineCount + " Weight=" + weights[pl];
+				for (int i=0; i < boxCount; i++) {
 					
-					display = display + " "  + boxes.get(i).getSquares().size() + "(" + pl.allocatedMines[i] + ") ";
+					display = display + " "  + boxes.get(i).getSquares().size() + "(" + workingProbs.getAllocatedMines(pl, i) + ") ";
 					
 				}
 
@@ -267,25 +257,28 @@ public class RolloutGenerator {
 	
 	
 	
-	private List<ProbabilityLine> mergeProbabilities(NextWitness nw) {
+	private ProbabilityLineTable mergeProbabilities(NextWitness nw) {
 		
-		List<ProbabilityLine> newProbs = new ArrayList<>();
+		ProbabilityLineTable newProbs = ProbabilityLineTable.acquire(boxCount, false, null);
 		
-		for (ProbabilityLine pl: workingProbs) {
+		for (int pl=0; pl < workingProbs.size(); pl++) {
 			
-			int missingMines = nw.witness.getMines() - countPlacedMines(pl, nw);
+			int missingMines = nw.witness.getMines() - countPlacedMines(workingProbs, pl, nw);
 			
 			if (missingMines < 0) {
 				// too many mines placed around this witness previously, so this probability can't be valid
 			} else if (missingMines == 0) {
-				newProbs.add(pl);   // witness already exactly satisfied, so nothing to do
+				newProbs.addCopy(workingProbs, pl);   // witness already exactly satisfied, so nothing to do
 			} else if (nw.newBoxes.isEmpty()) {
 				// nowhere to put the new mines, so this probability can't be valid
 			} else {
-				newProbs.addAll(distributeMissingMines(pl, nw, missingMines, 0));
+				distributeMissingMines(newProbs, workingProbs, pl, nw, missingMines, 0, 0);
 			}
 	
 		}
+		
+		workingProbs.release();
+		workingProbs = null;
 
 		//solver.display("Processed witness " + nw.witness.display());
 		
@@ -300,34 +293,33 @@ public class RolloutGenerator {
 		
 	}
 	
-	// this is used to recursively place the missing Mines into the available boxes for the probability line
-	private List<ProbabilityLine> distributeMissingMines(ProbabilityLine pl, NextWitness nw, int missingMines, int index) {
+	// this is used to recursively place the missing Mines into the available boxes for the probability line. Only the completed lines are added to the new table.
+	private void distributeMissingMines(ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int missingMines, int placedMines, int index) {
 		
 		recursions++;
 		if (recursions % 10000 == 0) {
 			boardState.display("Solution counter recursion = " + recursions);
 		}
 		
-		List<ProbabilityLine> result = new ArrayList<>();
-		
 		// if there is only one box left to put the missing mines we have reach this end of this branch of recursion
 		if (nw.newBoxes.size() - index == 1) {
 			// if there are too many for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMaxMines() < missingMines) {
-				return result;
+				return;
 			}
 			// if there are too few for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMinMines() > missingMines) {
-				return result;
+				return;
 			}
 			// if there are too many for this game then the probability can't be valid
-			if (pl.mineCount + missingMines > maxTotalMines) {
-				return result;
+			if (probs.mineCount[pl] + placedMines + missingMines > maxTotalMines) {
+				return;
 			}			
 			
 			// otherwise place the mines in the probability line
-			result.add(extendProbabilityLine(pl, nw.newBoxes.get(index), missingMines));
-			return result;
+			nw.placed[index] = missingMines;
+			extendProbabilityLine(newProbs, probs, pl, nw, placedMines + missingMines);
+			return;
 		}
 		
 		
@@ -335,40 +327,36 @@ public class RolloutGenerator {
 		int maxToPlace = Math.min(nw.newBoxes.get(index).getMaxMines(), missingMines);
 		
 		for (int i=nw.newBoxes.get(index).getMinMines(); i <= maxToPlace; i++) {
-			ProbabilityLine npl = extendProbabilityLine(pl, nw.newBoxes.get(index), i);
-			
-			result.addAll(distributeMissingMines(npl, nw, missingMines - i, index + 1));
+			nw.placed[index] = i;
+			distributeMissingMines(newProbs, probs, pl, nw, missingMines - i, placedMines + i, index + 1);
 		}
 		
-		return result;
-		
 	}
 	
-	// create a new probability line by taking the old and adding the mines to the new Box
-	private ProbabilityLine extendProbabilityLine(ProbabilityLine pl, Box newBox, int mines) {
-		
-		int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
+	// create a new probability line by taking the old and adding the mines placed in the new boxes
+	private void extendProbabilityLine(ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int mines) {
 		
-		BigInteger newSolutionCount = pl.solutionCount.multiply(BigInteger.valueOf(combination));
-		
-		ProbabilityLine result = new ProbabilityLine(newSolutionCount);
-		
-		result.mineCount = pl.mineCount + mines;
+		// the number of ways the mines can be placed in the new boxes. At most 8 boxes of 70 ways each, so this can't overflow
+		long combination = 1;
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			combination = combination * SMALL_COMBINATIONS[nw.newBoxes.get(i).getSquares().size()][nw.placed[i]];
+		}
 		
-		result.allocatedMines = pl.allocatedMines.clone();
+		int row = newProbs.addExtended(probs, pl, combination, mines);
 		
-		result.allocatedMines[newBox.getUID()] = mines;
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			newProbs.setMinesInBox(row, nw.newBoxes.get(i).getUID(), nw.placed[i]);
+		}
 		
-		return result;
 	}
 	
 	// counts the number of mines already placed
-	private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+	private int countPlacedMines(ProbabilityLineTable probs, int pl, NextWitness nw) {
 		
 		int result = 0;
 		
 		for (Box b: nw.oldBoxes) {
-			result = result + pl.allocatedMines[b.getUID()];
+			result = result + probs.getAllocatedMines(pl, b.getUID());
 		}
 		
 		return result;
@@ -465,24 +453,26 @@ public class RolloutGenerator {
 		//boardState.display("Random number is " + edge);
 		
 		int soFar = 0;
-		ProbabilityLine line = null;
-		for (ProbabilityLine pl: workingProbs) {
-			soFar = soFar + pl.weight;
+		int line = -1;
+		for (int pl=0; pl < workingProbs.size(); pl++) {
+			soFar = soFar + weights[pl];
 			if (soFar > edge) {
 				line = pl;
 				break;
 			}
 		}
 
-		mineCount = mineCount - line.mineCount;
+		mineCount = mineCount - workingProbs.mineCount[line];
 		
 		List<Location> mines = new ArrayList<>(placedMines);  // start with the mines we have already placed
 		
-		for (int i=0; i < line.allocatedMines.length; i++) {
+		for (int i=0; i < boxCount; i++) {
+			
+			int allocated = workingProbs.getAllocatedMines(line, i);
 			
-			if (line.allocatedMines[i] == 0) { // if no mines here nothing to do
+			if (allocated == 0) { // if no mines here nothing to do
 			
-			} else if (line.allocatedMines[i] == boxes.get(i).getSquares().size()) {  // if the box is full of mines then all tile in the box are mines
+			} else if (allocated == boxes.get(i).getSquares().size()) {  // if the box is full of mines then all tile in the box are mines
 				for (Square tile: boxes.get(i).getSquares()) {
 					mines.add(tile);
 				}
@@ -490,7 +480,7 @@ public class RolloutGenerator {
 			} else {  // shuffle the tiles in the box and take the first ones as the mines
 				Collections.shuffle(boxes.get(i).getSquares(), rng);
 				
-				for (int j=0; j < line.allocatedMines[i]; j++) {
+				for (int j=0; j < allocated; j++) {
 					mines.add(boxes.get(i).getSquares().get(j));
 				}
 			}
@@ -2,13 +2,14 @@ package minesweeper.solver;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import minesweeper.solver.constructs.Box;
+import minesweeper.solver.constructs.Square;
 import minesweeper.solver.constructs.Witness;
 
 /**
@@ -19,9 +20,14 @@ public class SolutionCounter {
 
 	private int[][] SMALL_COMBINATIONS = new int[][] {{1}, {1,1}, {1,2,1}, {1,3,3,1}, {1,4,6,4,1}, {1,5,10,10,5,1}, {1,6,15,20,15,6,1}, {1,7,21,35,35,21,7,1}, {1,8,28,56,70,56,28,8,1}};
 	
-	private class MergeSorter implements Comparator<ProbabilityLine> {
+	// merges of at least this many probability lines hash the lines' signatures rather than sorting them
+	private static final int HASH_MERGE_MINIMUM = 200;
+	
+	// sorts the rows of a probability line table
+	private class MergeSorter implements Comparator<Integer> {
 
 		int[] checks;
+		ProbabilityLineTable table;
 		
 		private MergeSorter(List<Box> boxes) {
 			
@@ -35,9 +41,9 @@ public class SolutionCounter {
 		 
 		
 		@Override
-		public int compare(ProbabilityLine p1, ProbabilityLine p2) {
+		public int compare(Integer p1, Integer p2) {
 			
-			int c = p1.mineCount - p2.mineCount;
+			int c = table.mineCount[p1] - table.mineCount[p2];
 			
 			if (c != 0) {
 				return c;
@@ -51,7 +57,7 @@ public class SolutionCounter {
 				
 				//c = c1.compareTo(c2);
 				
-				c = p1.allocatedMines[index] - p2.allocatedMines[index];
+				c = table.getAllocatedMines(p1, index) - table.getAllocatedMines(p2, index);
 				
 				if (c != 0) {
 					return c;
@@ -64,40 +70,13 @@ public class SolutionCounter {
 		
 	}
 	
-	// used to hold a viable solution 
-	private class ProbabilityLine implements Comparable<ProbabilityLine> {
-		private int mineCount = 0;
-		private BigInteger solutionCount = BigInteger.ZERO;
-		private BigInteger[] mineBoxCount  = new BigInteger[boxCount];
-		private int[] allocatedMines  = new int[boxCount];   // this is the number of mines originally allocate to a box
-		
-		{
-			for (int i=0; i < mineBoxCount.length; i++) {
-				mineBoxCount[i] = BigInteger.ZERO;
-			}
-		}
-		
-		private ProbabilityLine() {
-			this(BigInteger.ZERO);
-		}
-		
-		private ProbabilityLine(BigInteger solutionCount) {
-			this.solutionCount = solutionCount;
-		}
-		
-		@Override
-		// sort by the number of mines in the solution
-		public int compareTo(ProbabilityLine o) {
-			return this.mineCount - o.mineCount;
-		}
-	}
-	
 	// used to hold what we need to analyse next
 	private class NextWitness {
 		
 		private Witness witness;
 		private List<Box> newBoxes = new ArrayList<>();
 		private List<Box> oldBoxes = new ArrayList<>();
+		private int[] placed;    // the mines placed in each new box while distributing the missing mines
 		
 		private NextWitness(Witness w) {
 			
@@ -110,6 +89,8 @@ public class SolutionCounter {
 					newBoxes.add(b);
 				}
 			}
+			
+			placed = new int[newBoxes.size()];
 
 		}
 	
@@ -117,8 +98,8 @@ public class SolutionCounter {
 	
 	private long duration;
 	
-	private List<ProbabilityLine> workingProbs = new ArrayList<>(); // as we work through an independent set of witnesses probabilities are held here
- 	private List<ProbabilityLine> heldProbs = new ArrayList<>();  
+	private ProbabilityLineTable workingProbs; // as we work through an independent set of witnesses probabilities are held here
+ 	private ProbabilityLineTable heldProbs;  
 	
 	//when set to true indicates that the box has been part of this analysis
 	private boolean[] mask;           
@@ -134,6 +115,15 @@ public class SolutionCounter {
 	private int independentGroups = 0;
 	private int recursions = 0;
 	
+	// groups of witnesses already counted are taken from the cache, so a what-if only counts the groups it changes
+	final private ProbabilityEngineCache cache;
+	private Map<Witness, Integer> groupOf;       // the independent group each witness belongs to
+	private List<ProbabilityEngineCache.GroupKey> groupKeys;
+	private List<List<Box>> groupBoxLists;       // the boxes of each group in the order the key refers to them
+	private int reused = 0;
+	private boolean capped = false;              // true if a line of the current group was rejected for having too many mines
+	private int peakMines = 0;                   // the most mines held by any line of the current group
+	
 	private BigInteger finalSolutionsCount;
 	private int clearCount;
 	
@@ -145,8 +135,17 @@ public class SolutionCounter {
 	
 	
 	public SolutionCounter(BoardState solver, WitnessWeb web, int squaresLeft, int minesLeft) {
+		this(solver, web, squaresLeft, minesLeft, null);
+	}
+	
+	/**
+	 * If a cache is supplied then independent groups of witnesses which have been counted before are taken from it rather than recounted.
+	 * This makes a what-if on one tile cost no more than counting the group the tile changes.
+	 */
+	public SolutionCounter(BoardState solver, WitnessWeb web, int squaresLeft, int minesLeft, ProbabilityEngineCache cache) {
 		
 		this.solver = solver;
+		this.cache = cache;
 		this.web = web;
 		this.minesLeft = minesLeft;
 		this.squaresLeft = squaresLeft - web.getSquares().size();
@@ -187,14 +186,20 @@ public class SolutionCounter {
 		long startTime = System.currentTimeMillis();
 		
 		// create an initial solution of no mines anywhere
-		heldProbs.add(new ProbabilityLine(BigInteger.ONE));
+		heldProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+		heldProbs.addRow(1);
 		
 		// add an empty probability line to get us started
-		workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+		workingProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+		workingProbs.addRow(1);
 		
 		// create an empty mask - indicating no boxes have been processed
 		mask = new boolean[boxCount];           
 		
+		if (cache != null) {
+			restoreCachedGroups();
+		}
+		
 		NextWitness witness = findFirstWitness();
 		
 		while (witness != null) {
@@ -219,92 +224,87 @@ public class SolutionCounter {
 			finalSolutionsCount = BigInteger.ZERO;
 			clearCount = 0;
 		}
-
+		
+		workingProbs.release();
+		heldProbs.release();
+		workingProbs = null;
+		heldProbs = null;
+		
+		if (cache != null) {
+			solver.display(reused + " of " + groupKeys.size() + " independent groups reused by the solution counter");
+		}
 		
 		duration = System.currentTimeMillis() - startTime;
 	}
 	
-	private List<ProbabilityLine> crunchByMineCount(List<ProbabilityLine> target, MergeSorter sorter) {
+	private ProbabilityLineTable crunchByMineCount(ProbabilityLineTable target, MergeSorter sorter) {
 		
 		if (target.isEmpty()) {
 			return target;
 		}
 		
+		// for a large number of lines combine them in a single pass rather than sorting them
+		if (target.size() >= HASH_MERGE_MINIMUM) {
+			ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
+			target.mergeInto(result, sorter.checks, mask);
+			target.release();
+			return result;
+		}
+		
 		// sort the solutions by number of mines
-		Collections.sort(target, sorter);
+		Integer[] order = new Integer[target.size()];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
+		}
+		sorter.table = target;
+		Arrays.sort(order, sorter);
 		
-		List<ProbabilityLine> result = new ArrayList<>();
+		ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
 		
-		ProbabilityLine current = null;
+		int current = -1;
+		int currentRow = -1;
 
-		for (ProbabilityLine pl: target) {
+		for (int pl: order) {
 			
-			if (current == null) {
-				current = pl;
-			} else if (sorter.compare(current, pl) != 0) {
-				result.add(current);
+			if (current == -1 || sorter.compare(current, pl) != 0) {
 				current = pl;
+				currentRow = result.addCopy(target, pl);
 			} else {
-				combineProbabilities(current, pl);
+				result.combine(currentRow, target, pl, mask);
 			}
 			
 		}
 
-		result.add(current);
+		target.release();
 
 		return result;
 		
 	}
 
 	
-	// calculate how many ways this solution can be generated and roll them into one
-	private void combineProbabilities(ProbabilityLine npl, ProbabilityLine pl) {
-		
-		npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-		
-		for (int i = 0; i < pl.mineBoxCount.length; i++) {
-			if (mask[i]) {  
-	 			npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
-			}
-	
-		}
-		
-	}
-	
 	// this combines newly generated probabilities with ones we have already stored from other independent sets of witnesses
 	private void storeProbabilities() {
 		
-		List<ProbabilityLine> result = new ArrayList<>(); 
-		
 		// if there are no lines to store then we don't have a valid position
 		if (workingProbs.isEmpty()) {
 			//solver.display("working probabilites list is empty!!");
-			heldProbs.clear();
+			heldProbs.release();
+			heldProbs = ProbabilityLineTable.acquire(boxCount, true, null);
 			return;
 		} 
 		
-		List<ProbabilityLine> crunched = workingProbs;
+		ProbabilityLineTable crunched = workingProbs;
 		
 		//solver.display("New data has " + crunched.size() + " entries");
 		
-		for (ProbabilityLine pl: crunched) {
+		ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
+		
+		for (int pl=0; pl < crunched.size(); pl++) {
 			
-			for (ProbabilityLine epl: heldProbs) {
+			for (int epl=0; epl < heldProbs.size(); epl++) {
 				
-				if (pl.mineCount + epl.mineCount <= maxTotalMines) {
-					
-					ProbabilityLine npl = new ProbabilityLine(pl.solutionCount.multiply(epl.solutionCount));
-					npl.mineCount = pl.mineCount + epl.mineCount;
-					
-					for (int i=0; i < npl.mineBoxCount.length; i++) {
-						
-						BigInteger w1 = pl.mineBoxCount[i].multiply(epl.solutionCount);
-						BigInteger w2 = epl.mineBoxCount[i].multiply(pl.solutionCount);
-						npl.mineBoxCount[i] = w1.add(w2);
-						
-					}
-					result.add(npl);
-					
+				if (crunched.mineCount[pl] + heldProbs.mineCount[epl] <= maxTotalMines) {
+					result.addProduct(crunched, pl, heldProbs, epl);
 				}
 				
 			}
@@ -312,36 +312,32 @@ public class SolutionCounter {
 		}
 	
 		// sort into mine order 
-		Collections.sort(result);
-		
-		heldProbs.clear();
-		
-		// if result is empty this is an impossible position
-		if (result.isEmpty()) {
-			return;
-		}
+		Integer[] order = new Integer[result.size()];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
+		}
+		final ProbabilityLineTable sorting = result;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer p1, Integer p2) {
+				return sorting.mineCount[p1] - sorting.mineCount[p2];
+			}
+		});
 		
-		// and combine them into a single probability line for each mine count
-		int mc = result.get(0).mineCount;
-		ProbabilityLine npl = new ProbabilityLine();
-		npl.mineCount = mc;
+		heldProbs.release();
+		heldProbs = ProbabilityLineTable.acquire(boxCount, true, null);
 		
-		for (ProbabilityLine pl: result) {
-			if (pl.mineCount != mc) {
-				heldProbs.add(npl);
-				mc = pl.mineCount;
-				npl = new ProbabilityLine();
-				npl.mineCount = mc;
-			}
-			npl.solutionCount = npl.solutionCount.add(pl.solutionCount);
-			
-			for (int i = 0; i < pl.mineBoxCount.length; i++) {
-				npl.mineBoxCount[i] = npl.mineBoxCount[i].add(pl.mineBoxCount[i]);
+		// and combine them into a single probability line for each mine count. If result is empty this is an impossible position
+		int npl = -1;
+		for (int pl: order) {
+			if (npl == -1 || result.mineCount[pl] != heldProbs.mineCount[npl]) {
+				npl = heldProbs.addRow(0);
+				heldProbs.mineCount[npl] = result.mineCount[pl];
 			}
+			heldProbs.accumulate(npl, result, pl);
 		}
-
-		heldProbs.add(npl);
-
+		
+		result.release();
 
 	}
 	
@@ -360,23 +356,27 @@ public class SolutionCounter {
 		}						
 		
 		// calculate how many mines 
-		for (ProbabilityLine pl: heldProbs) {
+		for (int pl=0; pl < heldProbs.size(); pl++) {
+			
+			int mineCount = heldProbs.mineCount[pl];
 			
-			if (pl.mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
+			if (mineCount >= minTotalMines) {    // if the mine count for this solution is less than the minimum it can't be valid
 				
-				if (mineCounts.put(pl.mineCount, pl.solutionCount) != null) {
+				BigInteger solutionCount = heldProbs.getSolutionCount(pl);
+				
+				if (mineCounts.put(mineCount, solutionCount) != null) {
 					System.out.println("Duplicate mines in probability Engine");
 				}
 				
-				BigInteger mult = Solver.combination(minesLeft - pl.mineCount, squaresLeft);  //# of ways the rest of the board can be formed
+				BigInteger mult = Solver.combination(minesLeft - mineCount, squaresLeft);  //# of ways the rest of the board can be formed
 				
-				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - pl.mineCount)).multiply(pl.solutionCount));
+				outsideTally = outsideTally.add(mult.multiply(BigInteger.valueOf(minesLeft - mineCount)).multiply(solutionCount));
 				
 				// this is all the possible ways the mines can be placed across the whole game
-				totalTally = totalTally.add(mult.multiply(pl.solutionCount));
+				totalTally = totalTally.add(mult.multiply(solutionCount));
 				
 				for (int i=0; i < emptyBox.length; i++) {
-					if (pl.mineBoxCount[i].signum() != 0) {
+					if (heldProbs.mineBoxSignum(pl, i) != 0) {
 						emptyBox[i] = false;
 					}
 				}				
@@ -402,26 +402,29 @@ public class SolutionCounter {
 	
 	
 	
-	private List<ProbabilityLine> mergeProbabilities(NextWitness nw) {
+	private ProbabilityLineTable mergeProbabilities(NextWitness nw) {
 		
-		List<ProbabilityLine> newProbs = new ArrayList<>();
+		ProbabilityLineTable newProbs = ProbabilityLineTable.acquire(boxCount, true, null);
 		
-		for (ProbabilityLine pl: workingProbs) {
+		for (int pl=0; pl < workingProbs.size(); pl++) {
 			
-			int missingMines = nw.witness.getMines() - countPlacedMines(pl, nw);
+			int missingMines = nw.witness.getMines() - countPlacedMines(workingProbs, pl, nw);
 			
 			if (missingMines < 0) {
 				// too many mines placed around this witness previously, so this probability can't be valid
 			} else if (missingMines == 0) {
-				newProbs.add(pl);   // witness already exactly satisfied, so nothing to do
+				newProbs.addCopy(workingProbs, pl);   // witness already exactly satisfied, so nothing to do
 			} else if (nw.newBoxes.isEmpty()) {
 				// nowhere to put the new mines, so this probability can't be valid
 			} else {
-				newProbs.addAll(distributeMissingMines(pl, nw, missingMines, 0));
+				distributeMissingMines(newProbs, workingProbs, pl, nw, missingMines, 0, 0);
 			}
 	
 		}
 		
+		workingProbs.release();
+		workingProbs = null;
+		
 		//solver.display("Processed witness " + nw.witness.display());
 		
 		// flag the last set of details as processed
@@ -460,34 +463,36 @@ public class SolutionCounter {
 		
 	}
 	
-	// this is used to recursively place the missing Mines into the available boxes for the probability line
-	private List<ProbabilityLine> distributeMissingMines(ProbabilityLine pl, NextWitness nw, int missingMines, int index) {
+	// this is used to recursively place the missing Mines into the available boxes for the probability line. Only the completed lines are added to the new table.
+	private void distributeMissingMines(ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int missingMines, int placedMines, int index) {
 		
 		recursions++;
 		if (recursions % 10000 == 0) {
 			solver.display("Solution counter recursion = " + recursions);
 		}
 		
-		List<ProbabilityLine> result = new ArrayList<>();
-		
 		// if there is only one box left to put the missing mines we have reach this end of this branch of recursion
 		if (nw.newBoxes.size() - index == 1) {
 			// if there are too many for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMaxMines() < missingMines) {
-				return result;
+				return;
 			}
 			// if there are too few for this box then the probability can't be valid
 			if (nw.newBoxes.get(index).getMinMines() > missingMines) {
-				return result;
+				return;
 			}
 			// if there are too many for this game then the probability can't be valid
-			if (pl.mineCount + missingMines > maxTotalMines) {
-				return result;
+			if (probs.mineCount[pl] + placedMines + missingMines > maxTotalMines) {
+				capped = true;
+				return;
 			}			
 			
+			peakMines = Math.max(peakMines, probs.mineCount[pl] + placedMines + missingMines);
+			
 			// otherwise place the mines in the probability line
-			result.add(extendProbabilityLine(pl, nw.newBoxes.get(index), missingMines));
-			return result;
+			nw.placed[index] = missingMines;
+			extendProbabilityLine(newProbs, probs, pl, nw, placedMines + missingMines);
+			return;
 		}
 		
 		
@@ -495,61 +500,39 @@ public class SolutionCounter {
 		int maxToPlace = Math.min(nw.newBoxes.get(index).getMaxMines(), missingMines);
 		
 		for (int i=nw.newBoxes.get(index).getMinMines(); i <= maxToPlace; i++) {
-			ProbabilityLine npl = extendProbabilityLine(pl, nw.newBoxes.get(index), i);
-			
-			result.addAll(distributeMissingMines(npl, nw, missingMines - i, index + 1));
+			nw.placed[index] = i;
+			distributeMissingMines(newProbs, probs, pl, nw, missingMines - i, placedMines + i, index + 1);
 		}
 		
-		return result;
-		
 	}
 	
-	// create a new probability line by taking the old and adding the mines to the new Box
-	private ProbabilityLine extendProbabilityLine(ProbabilityLine pl, Box newBox, int mines) {
-		
-		int combination = SMALL_COMBINATIONS[newBox.getSquares().size()][mines];
-		
-		BigInteger newSolutionCount = pl.solutionCount.multiply(BigInteger.valueOf(combination));
+	// create a new probability line by taking the old and adding the mines placed in the new boxes
+	private void extendProbabilityLine(ProbabilityLineTable newProbs, ProbabilityLineTable probs, int pl, NextWitness nw, int mines) {
 		
-		ProbabilityLine result = new ProbabilityLine(newSolutionCount);
+		// the number of ways the mines can be placed in the new boxes. At most 8 boxes of 70 ways each, so this can't overflow
+		long combination = 1;
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			combination = combination * SMALL_COMBINATIONS[nw.newBoxes.get(i).getSquares().size()][nw.placed[i]];
+		}
 		
-		result.mineCount = pl.mineCount + mines;
+		int row = newProbs.addExtended(probs, pl, combination, mines);
 		
-		// copy the probability array
-		if (combination == 1) {
-			System.arraycopy(pl.mineBoxCount, 0, result.mineBoxCount, 0, pl.mineBoxCount.length);
-		} else {
-			BigInteger multiplier = BigInteger.valueOf(combination);
-			for (int i=0; i < pl.mineBoxCount.length; i++) {
-				if (mask[i]) {
-					result.mineBoxCount[i] = pl.mineBoxCount[i].multiply(multiplier);	
-				}
-			}
+		for (int i=0; i < nw.newBoxes.size(); i++) {
+			newProbs.setMinesInBox(row, nw.newBoxes.get(i).getUID(), nw.placed[i]);
 		}
-
-		result.allocatedMines = pl.allocatedMines.clone();
-		
-		result.mineBoxCount[newBox.getUID()] = BigInteger.valueOf(mines).multiply(newSolutionCount);
-		result.allocatedMines[newBox.getUID()] = mines;
 		
-		return result;
 	}
 	
 	// counts the number of mines already placed
-	private int countPlacedMines(ProbabilityLine pl, NextWitness nw) {
+	private int countPlacedMines(ProbabilityLineTable probs, int pl, NextWitness nw) {
 		
-		BigInteger result = BigInteger.ZERO;
+		int result = 0;
 		
 		for (Box b: nw.oldBoxes) {
-			result = result.add(pl.mineBoxCount[b.getUID()]);
-		}
-		
-		BigInteger[] divide = result.divideAndRemainder(pl.solutionCount);
-		if (divide[1].signum() != 0) {
-			System.out.println("Min Box Count divide has non-zero remainder " + divide[1]);
+			result = result + probs.getMinesInBox(pl, b.getUID());
 		}
 		
-		return divide[0].intValue();
+		return result;
 	}
 	
 	// return any witness which hasn't been processed
@@ -651,16 +634,25 @@ public class SolutionCounter {
 		// get an unprocessed witness
 		NextWitness nw =  findFirstWitness();
 		
+		// keep the group's lines so they don't need counting again
+		if (cache != null) {
+			int group = groupOf.get(prevWitness.witness);
+			cache.put(groupKeys.get(group), saveGroup(groupBoxLists.get(group)));
+		}
+		
 		// only crunch it down for non-trivial probability lines unless it is the last set - this is an efficiency decision
 		//if (workingProbs.size() > 0 || nw == null) {
 			storeProbabilities();
 			
 			// reset the working array so we can start building up one for the new set of witnesses
-			workingProbs.clear();
-			workingProbs.add(new ProbabilityLine(BigInteger.ONE));
+			workingProbs.release();
+			workingProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+			workingProbs.addRow(1);
 			
 			// reset the mask indicating that no boxes have been processed 
 			mask = new boolean[boxCount]; 
+			capped = false;
+			peakMines = 0;
 		//}
 		
 		// if the position is invalid exit now
@@ -674,6 +666,167 @@ public class SolutionCounter {
 	}
 	
 	
+	// split the witnesses into independent groups and take any group which has been counted before from the cache
+	private void restoreCachedGroups() {
+		
+		groupOf = new HashMap<>();
+		groupKeys = new ArrayList<>();
+		groupBoxLists = new ArrayList<>();
+		
+		for (Witness start: witnesses) {
+			
+			if (groupOf.containsKey(start)) {
+				continue;
+			}
+			
+			// find the witnesses and boxes linked to this witness
+			int group = groupKeys.size();
+			List<Witness> groupWitnesses = new ArrayList<>();
+			List<Box> groupBoxes = new ArrayList<>();
+			boolean[] boxFound = new boolean[boxCount];
+			
+			groupOf.put(start, group);
+			groupWitnesses.add(start);
+			for (int i=0; i < groupWitnesses.size(); i++) {
+				for (Box b: groupWitnesses.get(i).getBoxes()) {
+					if (boxFound[b.getUID()]) {
+						continue;
+					}
+					boxFound[b.getUID()] = true;
+					groupBoxes.add(b);
+					for (Witness w: b.getWitnesses()) {
+						if (!groupOf.containsKey(w)) {
+							groupOf.put(w, group);
+							groupWitnesses.add(w);
+						}
+					}
+				}
+			}
+			
+			ProbabilityEngineCache.GroupKey key = buildGroupKey(groupWitnesses, groupBoxes);
+			groupKeys.add(key);
+			groupBoxLists.add(groupBoxes);
+			
+			ProbabilityEngineCache.GroupResult cached = cache.get(key);
+			if (cached == null || !cached.isValidFor(maxTotalMines)) {
+				continue;
+			}
+			
+			// the group is already counted, so combine its lines with the others and mark it as done
+			reused++;
+			independentGroups++;
+			
+			for (Witness w: groupWitnesses) {
+				w.setProcessed(true);
+			}
+			for (Box b: groupBoxes) {
+				b.setProcessed(true);
+			}
+			
+			workingProbs.release();
+			workingProbs = restoreGroup(cached, groupBoxes);
+			storeProbabilities();
+			
+			workingProbs.release();
+			workingProbs = ProbabilityLineTable.acquire(boxCount, true, null);
+			workingProbs.addRow(1);
+		}
+		
+	}
+	
+	// a description of everything counting the group depends on, the boxes are referenced by their position in the group since the uids change
+	private ProbabilityEngineCache.GroupKey buildGroupKey(List<Witness> groupWitnesses, List<Box> groupBoxes) {
+		
+		Map<Box, Integer> localBox = new HashMap<>();
+		for (int i=0; i < groupBoxes.size(); i++) {
+			localBox.put(groupBoxes.get(i), i);
+		}
+		
+		Map<Witness, Integer> localWitness = new HashMap<>();
+		for (int i=0; i < groupWitnesses.size(); i++) {
+			localWitness.put(groupWitnesses.get(i), i);
+		}
+		
+		List<Integer> key = new ArrayList<>();
+		
+		key.add(groupWitnesses.size());
+		for (Witness w: groupWitnesses) {
+			key.add(w.x);
+			key.add(w.y);
+			key.add(w.getMines());
+			key.add(w.getBoxes().size());
+			for (Box b: w.getBoxes()) {
+				key.add(localBox.get(b));
+			}
+		}
+		
+		key.add(groupBoxes.size());
+		for (Box b: groupBoxes) {
+			key.add(b.getMinMines());
+			key.add(b.getMaxMines());
+			key.add(b.getSquares().size());
+			for (Square squ: b.getSquares()) {
+				key.add(squ.x);
+				key.add(squ.y);
+			}
+			key.add(b.getWitnesses().size());
+			for (Witness w: b.getWitnesses()) {
+				key.add(localWitness.get(w));
+			}
+		}
+		
+		int[] data = new int[key.size()];
+		for (int i=0; i < data.length; i++) {
+			data[i] = key.get(i);
+		}
+		
+		return new ProbabilityEngineCache.GroupKey(data);
+	}
+	
+	// copy the lines of the group just counted into a form which doesn't depend on the box uids
+	private ProbabilityEngineCache.GroupResult saveGroup(List<Box> groupBoxes) {
+		
+		ProbabilityEngineCache.GroupResult result = new ProbabilityEngineCache.GroupResult();
+		
+		result.maxTotalMines = maxTotalMines;
+		result.capped = capped;
+		result.peakMines = peakMines;
+		
+		for (int pl=0; pl < workingProbs.size(); pl++) {
+			
+			ProbabilityEngineCache.GroupLine line = new ProbabilityEngineCache.GroupLine();
+			line.mineCount = workingProbs.mineCount[pl];
+			line.bigSolutionCount = workingProbs.getSolutionCount(pl);
+			line.bigMineBoxCount = new BigInteger[groupBoxes.size()];
+			
+			for (int i=0; i < groupBoxes.size(); i++) {
+				line.bigMineBoxCount[i] = workingProbs.getMineBoxCount(pl, groupBoxes.get(i).getUID());
+			}
+			
+			result.lines.add(line);
+		}
+		
+		return result;
+	}
+	
+	// rebuild the group's lines from the cached results
+	private ProbabilityLineTable restoreGroup(ProbabilityEngineCache.GroupResult cached, List<Box> groupBoxes) {
+		
+		ProbabilityLineTable result = ProbabilityLineTable.acquire(boxCount, true, null);
+		
+		for (ProbabilityEngineCache.GroupLine line: cached.lines) {
+			
+			int row = result.addRow(line.bigSolutionCount);
+			result.mineCount[row] = line.mineCount;
+			
+			for (int i=0; i < groupBoxes.size(); i++) {
+				result.setMineBoxCount(row, groupBoxes.get(i).getUID(), line.bigMineBoxCount[i]);
+			}
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * The number of ways the mines can be placed in the game position
 	 * @return
@@ -27,7 +27,9 @@ import minesweeper.solver.constructs.WitnessData;
 import minesweeper.solver.iterator.Iterator;
 import minesweeper.solver.iterator.SequentialIterator;
 import minesweeper.solver.settings.SolverSettings;
+import minesweeper.solver.settings.SolverSettings.NumericMode;
 import minesweeper.solver.utility.Binomial;
+import minesweeper.solver.utility.Cancellation;
 import minesweeper.solver.utility.ProgressMonitor;
 import minesweeper.structure.Action;
 import minesweeper.structure.Area;
@@ -115,10 +117,22 @@ public class Solver implements Asynchronous<Action[]> {
     
     final static int CORES = Runtime.getRuntime().availableProcessors();
     
+    /**
+     * When processing in parallel the iterations are split into about this many pieces for each core
+     */
+    final static int PARALLEL_PIECES_PER_CORE = 4;
+    
+    /**
+     * If the brute force deep analysis has fewer solutions than this then the top moves are analysed sequentially else in parallel
+     */
+    final static int BRUTE_FORCE_ANALYSIS_PARALLEL_MINIMUM = 100;
+    
     
     // a binomial coefficient generator which allows up to (choose n from 1000000) and builds a cache of everything up to (choose n from 100) 
     static Binomial binomialEngine = new Binomial(1000000, 500); 
     
+    private final static double LOG_2 = Math.log(2);
+    
     
     protected final SolverSettings preferences;
 
@@ -131,6 +145,12 @@ public class Solver implements Asynchronous<Action[]> {
     // a class which holds the solves current view of the board
     private final BoardState boardState;
     private ProbabilityEngineModel pe;
+    
+    // results of independent groups from earlier moves, so unchanged groups don't need to be processed again
+    private final ProbabilityEngineCache peCache = new ProbabilityEngineCache();
+    
+    // independent groups counted by earlier what-ifs, so a what-if only counts the group the tile being tested changes
+    private final ProbabilityEngineCache counterCache = new ProbabilityEngineCache();
     private BruteForce bf;
     
     private BruteForceAnalysisModel bruteForceAnalysis;
@@ -155,6 +175,20 @@ public class Solver implements Asynchronous<Action[]> {
     private final boolean interactive;
     
     private FinalMoves answer;
+    
+    // lets the analysis know when to stop, a new one is created for each move
+    private volatile Cancellation cancellation = new Cancellation(0);
+    
+    // a stop requested between moves is kept for the next move, guarded by stopLock
+    private final Object stopLock = new Object();
+    private boolean moveRunning = false;
+    private boolean stopPending = false;
+    
+    // the best move found so far while the analysis is running
+    private volatile Action[] currentBest = new Action[0];
+    
+    // the endgame tablebase for small isolated edges, if there is one
+    private EndgameTablebase tablebase;
 
     // used to indicate that the solver shouldn't bother placing flags on the board
     // this is considered expert tactics because it reduces the number of mouse actions.
@@ -211,6 +245,15 @@ public class Solver implements Asynchronous<Action[]> {
         
         this.coachDisplay = coachDisplay;
         
+        if (preferences.getTablebaseFile() != null) {
+        	try {
+        		tablebase = EndgameTablebase.open(preferences.getTablebaseFile());
+        		display("Using endgame tablebase " + preferences.getTablebaseFile() + " with " + tablebase.size() + " edges");
+        	} catch (Exception e) {
+        		displayAlways("Unable to open endgame tablebase " + preferences.getTablebaseFile() + ": " + e.getMessage());
+        	}
+        }
+        
         List<Location> witnesses = new ArrayList<>(500);
         for (int x=0; x < myGame.getWidth(); x++) {
         	for (int y=0; y < myGame.getHeight(); y++) {
@@ -232,6 +275,29 @@ public class Solver implements Asynchronous<Action[]> {
     @Override
     public void start() {
     	
+    	// a stop can be requested after the solver's thread is launched but before it gets here, so it mustn't be lost
+    	synchronized (stopLock) {
+    		cancellation = new Cancellation(preferences.getMoveTimeLimit());
+    		if (stopPending) {
+    			cancellation.requestStop();
+    			stopPending = false;
+    		}
+    		moveRunning = true;
+    	}
+    	currentBest = new Action[0];
+    	
+    	try {
+    		startMove();
+    	} finally {
+    		synchronized (stopLock) {
+    			moveRunning = false;
+    		}
+    	}
+    	
+    }
+    
+    private void startMove() {
+    	
     	LoopCheck check = new LoopCheck();
     	
     	Thread checkThread  = new Thread(check);
@@ -253,10 +319,43 @@ public class Solver implements Asynchronous<Action[]> {
         //checkThread.interrupt();
         check.finishedOkay();
         
+        currentBest = answer.result;
+        
+        if (cancellation.isCancelled()) {
+        	displayAlways(myGame.showGameKey() + " analysis was cut short, the best move found so far has been played");
+        }
+        
     }
 
+    /**
+     * Stop the analysis of the current move as soon as possible. The solver will return the best move it has found so far.
+     * If no move is being analysed the stop applies to the next one.
+     */
     @Override
     public void requestStop() {
+    	synchronized (stopLock) {
+    		cancellation.requestStop();
+    		if (!moveRunning) {
+    			stopPending = true;
+    		}
+    	}
+    }
+    
+    protected Cancellation getCancellation() {
+    	return cancellation;
+    }
+    
+    /**
+     * The best move the solver has found so far. This can be called while the solver is running, together with {@link #requestStop()}
+     * it allows the caller to decide how long to wait for the move. Once the solver has finished this is the same as {@link #getResult()}.
+     */
+    public Action[] getCurrentBest() {
+    	return currentBest;
+    }
+    
+    // the analysis calls this each time it finds a better move, so it is the one played if the solver is stopped
+    protected void setCurrentBest(Action action) {
+    	currentBest = new Action[] {action};
     }
 
     @Override
@@ -580,9 +679,17 @@ public class Solver implements Asynchronous<Action[]> {
 
     	display("----- Starting probability engine -----");
     	
-    	pe = new ProbabilityEngineFast(boardState, wholeEdge, unrevealed, minesLeft);
+    	pe = new ProbabilityEngineFast(boardState, wholeEdge, unrevealed, minesLeft, preferences.getNumericMode(), peCache);
     	pe.process();
     	
+    	// if we ran out of time before the probabilities were found then just guess using the density of mines left
+    	if (pe.isCancelled()) {
+    		newLine("The analysis was stopped before the probability engine finished");
+    		offEdgeProb = BigDecimal.ONE.subtract(BigDecimal.valueOf(minesLeft).divide(BigDecimal.valueOf(unrevealed), Solver.DP, RoundingMode.HALF_UP));
+    		deadLocations = Area.EMPTY_AREA;
+    		return guess(null);
+    	}
+    	
     	// get the new deadLocations with any found by the probability engine 
     	deadLocations = pe.getDeadLocations();
     	
@@ -596,7 +703,7 @@ public class Solver implements Asynchronous<Action[]> {
  
     	// if all the locations are dead then just use any one (unless there is only one solution)
         if (deadLocations.size() == allWitnessedSquares.size() && deadLocations.size() != 0) {
-        	if (pe.getSolutionCount().signum() == 0) {
+        	if (!pe.hasSolutions()) {
         		display("Only one solution left");
         	} else {
         		display("All locations are dead");
@@ -629,13 +736,25 @@ public class Solver implements Asynchronous<Action[]> {
     	
     	// fetch the best candidates from the edge
         List<CandidateLocation> bestCandidates = pe.getBestCandidates(PROB_ENGINE_TOLERENCE);
+        
+        // until something better is found the move to play is the one the probability engine prefers, on or off the edge
+        if (pe.isBestGuessOffEdge()) {
+        	currentBest = new Action[] {pickGuess(wholeEdge)};
+        } else if (!bestCandidates.isEmpty()) {
+        	currentBest = new Action[] {bestCandidates.get(0).buildAction(MoveMethod.PROBABILITY_ENGINE)};
+        }
 
         List<Location> allUnrevealedSquares = null;
         
     	//  evaluate positions
     	evaluateLocations = new EvaluateLocations(this, boardState, wholeEdge, pe);
         
-    	BigDecimal offEdgeCutoff = pe.getBestOnEdgeProb().multiply(Solver.OFF_EDGE_TOLERENCE);
+    	BigDecimal offEdgeCutoff;
+    	if (preferences.getNumericMode() == NumericMode.DOUBLE) {
+    		offEdgeCutoff = BigDecimal.valueOf(pe.getBestOnEdgeProb().doubleValue() * Solver.OFF_EDGE_TOLERENCE.doubleValue());
+    	} else {
+    		offEdgeCutoff = pe.getBestOnEdgeProb().multiply(Solver.OFF_EDGE_TOLERENCE);
+    	}
     	
     	display("Off edge threshold is " + offEdgeCutoff);
     	
@@ -649,7 +768,7 @@ public class Solver implements Asynchronous<Action[]> {
         newLine("There are " + pe.getIndependentGroups() + " independent edges on the board");
         newLine("Probability Engine processing took " + pe.getDuration() + " milliseconds");
 
-    	if (pe.getSolutionCount().bitLength() < 40) {
+    	if (pe.isSolutionCountAtMost((1L << 39) - 1)) {
     		newLine("There are " + pe.getSolutionCount() + " candidate solutions remaining");
     	}
 
@@ -668,7 +787,7 @@ public class Solver implements Asynchronous<Action[]> {
         }
     	
     	// if there are no certain moves then process any Isolated non-dead edges we have found
-        if (!certainClearFound && !pe.getIsolatedEdges().isEmpty()) {
+        if (!certainClearFound && !pe.getIsolatedEdges().isEmpty() && !cancellation.isCancelled()) {
         	display("Processing an Isolated non-dead edge");
     		newLine("--------- Isolated Area ---------");
     		newLine("An isolated area has been found which can be processed separately");
@@ -681,6 +800,18 @@ public class Solver implements Asynchronous<Action[]> {
     			}
     		}
     		
+    		// a small isolated edge might have been solved already
+    		if (tablebase != null && bfdaStartLocations == null) {
+    			EndgameTablebase.Result stored = tablebase.lookup(boardState, cruncher.getSquares(), cruncher.getMines());
+    			if (stored != null) {
+    				String text = " (solve Isolated Edge " + Action.FORMAT_2DP.format(stored.getProbability().multiply(ONE_HUNDRED)) + "% from the endgame tablebase)";
+    				Action move = new Action(stored.move, Action.CLEAR, MoveMethod.BRUTE_FORCE_DEEP_ANALYSIS, text, pe.getProbability(stored.move));
+    				display(myGame.showGameKey() + " Endgame tablebase: " + move.asString());
+    				fm = new FinalMoves(move);
+    				return fm;
+    			}
+    		}
+    		
             // determine all possible solutions
             cruncher.process();
 
@@ -729,11 +860,11 @@ public class Solver implements Asynchronous<Action[]> {
         }
         
         // do brute force if the number of candidate solutions is not greater than the allowable maximum
-    	boolean doBruteForce = (pe.getSolutionCount().compareTo(BigInteger.valueOf(preferences.getBruteForceMaxSolutions())) <= 0);
+    	boolean doBruteForce = pe.isSolutionCountAtMost(preferences.getBruteForceMaxSolutions());
     	boolean certainFlagFound = !pe.getMines().isEmpty();
       
         // Probability engine says there are few enough candidate solutions to do a Brute force deep analysis - so lets try
-        if (doBruteForce && !certainClearFound) {
+        if (doBruteForce && !certainClearFound && !cancellation.isCancelled()) {
             display("----- Brute Force starting -----");
             newLine("----------- Brute Force Analysis -----------");
             
@@ -822,8 +953,8 @@ public class Solver implements Asynchronous<Action[]> {
         // if we haven't got a move from the BFDA
         if (!fm.moveFound) {
 
-        	// no certain moves and we aren't doing tiebreaks
-        	if (!certainClearFound && !preferences.isDoTiebreak()) {
+        	// no certain moves and we aren't doing tiebreaks, or haven't the time left to do them
+        	if (!certainClearFound && (!preferences.isDoTiebreak() || cancellation.isCancelled())) {
         		
         		// if off edge is better than on edge
         		if (pe.isBestGuessOffEdge()) {
@@ -1004,12 +1135,12 @@ public class Solver implements Asynchronous<Action[]> {
 	   	 pm.SetMaxProgress("Processing", maxProgress);
 	   	 int progress = 0;
 	   	 
-	   	 ProbabilityEngineModel pe = new ProbabilityEngineFast(boardState, wholeEdge, unrevealed, minesLeft);
+	   	 ProbabilityEngineModel pe = new ProbabilityEngineFast(boardState, wholeEdge, unrevealed, minesLeft, preferences.getNumericMode());
 	   	 pe.process();
 	   	 pm.setProgress(++progress);
 	   	 
 	   	 
-	   	 if (pe.getSolutionCount().signum() == 0) {
+	   	 if (!pe.hasSolutions()) {
 	   		 throw new Exception("This board has no solutions");
 	   	 } else {
 	   		 for (int i=0; i < boardState.getGameWidth(); i++) {
@@ -1064,7 +1195,7 @@ public class Solver implements Asynchronous<Action[]> {
 
 			if (sol.signum() != 0) {
 
-				BigDecimal prob = new BigDecimal(sol).divide(new BigDecimal(probEngine.getSolutionCount()), Solver.DP, RoundingMode.HALF_UP);
+				BigDecimal prob = divideCounts(sol, probEngine.getSolutionCount());
 				boardState.display(tile.display() + " with value " + i + " has " + clears + " clears with probability " + prob.toPlainString());
 
 				// expected clears is the sum of the number of mines cleared * the probability of clearing them
@@ -1330,6 +1461,14 @@ public class Solver implements Asynchronous<Action[]> {
       * Checks whether this location can have the value using a probability engine check
       */
      protected SolutionCounter validateLocationUsingSolutionCounter(WitnessWeb wholeEdge, Location superLocation, int value) {
+    	 return validateLocationUsingSolutionCounter(boardState, wholeEdge, superLocation, value);
+     }
+     
+     /**
+      * Checks whether this location can have the value, making the move on the given board. Threads evaluating locations
+      * at the same time each use their own {@link BoardState#snapshot() snapshot} of the board.
+      */
+     protected SolutionCounter validateLocationUsingSolutionCounter(BoardState boardState, WitnessWeb wholeEdge, Location superLocation, int value) {
 
     	 // make the move
     	 boardState.setWitnessValue(superLocation, value);
@@ -1347,7 +1486,7 @@ public class Solver implements Asynchronous<Action[]> {
     	 
     	 int minesLeft = myGame.getMines() - boardState.getConfirmedFlagCount();
     	 
-    	 SolutionCounter counter = new SolutionCounter(boardState, edge, unrevealed, minesLeft);
+    	 SolutionCounter counter = new SolutionCounter(boardState, edge, unrevealed, minesLeft, counterCache);
     	 counter.process();
 
     	 //if (engine.getSolutionCount().compareTo(counter.getSolutionCount()) != 0) {
@@ -1827,10 +1966,22 @@ public class Solver implements Asynchronous<Action[]> {
      */
     private FinalMoves guess(WitnessWeb wholeEdge) {
         
-    	Action action = null;
-        
     	display("Picking a guess");
     	
+    	Action action = pickGuess(wholeEdge);
+        
+        // this will check there isn't a flag blocking the move 
+        boardState.setAction(action);
+
+        return new FinalMoves(boardState.getActions().toArray(new Action[0]));
+        
+    }
+    
+    // the book move at the start of the game, otherwise the best tile off the edge
+    private Action pickGuess(WitnessWeb wholeEdge) {
+        
+    	Action action = null;
+    	
     	// get the starting move if we are at the start of the game
     	if (myGame.getGameState() == GameStateModel.NOT_STARTED && playOpening) {
     		if (overriddenStartLocation != null) {
@@ -1869,10 +2020,7 @@ public class Solver implements Asynchronous<Action[]> {
             action = list.get(0).buildAction(MoveMethod.GUESS);
         }
         
-        // this will check there isn't a flag blocking the move 
-        boardState.setAction(action);
-
-        return new FinalMoves(boardState.getActions().toArray(new Action[0]));
+        return action;
         
     }
     
@@ -2096,6 +2244,47 @@ public class Solver implements Asynchronous<Action[]> {
         
     }    
     
+    /**
+     * returns numerator / denominator as a double, scaling them down first if they are too large to be held as doubles
+     */
+    public static double ratio(BigInteger numerator, BigInteger denominator) {
+    	
+    	int shift = Math.max(numerator.bitLength(), denominator.bitLength()) - 1000;
+    	if (shift > 0) {
+    		return numerator.shiftRight(shift).doubleValue() / denominator.shiftRight(shift).doubleValue();
+    	} else {
+    		return numerator.doubleValue() / denominator.doubleValue();
+    	}
+    	
+    }
+    
+    /**
+     * returns the natural log of a positive value which may be too large to be held as a double
+     */
+    public static double log(BigInteger value) {
+    	
+    	int shift = value.bitLength() - 1000;
+    	if (shift > 0) {
+    		return Math.log(value.shiftRight(shift).doubleValue()) + shift * LOG_2;
+    	} else {
+    		return Math.log(value.doubleValue());
+    	}
+    	
+    }
+    
+    /**
+     * Divide two solution counts to give a probability using the numeric mode from the settings
+     */
+    protected BigDecimal divideCounts(BigInteger numerator, BigInteger denominator) {
+    	
+    	if (preferences.getNumericMode() == NumericMode.DOUBLE) {
+    		return BigDecimal.valueOf(ratio(numerator, denominator));
+    	} else {
+    		return new BigDecimal(numerator).divide(new BigDecimal(denominator), Solver.DP, RoundingMode.HALF_UP);
+    	}
+    	
+    }
+    
     @Override
     protected void finalize() {
         
@@ -0,0 +1,99 @@
+package minesweeper.solver;
+
+/**
+ * A fixed size table holding the winning lines and best move of the positions the brute force deep analysis has already solved.
+ * Positions are identified by a 64 bit Zobrist hash, so however large the analysis becomes the table never grows.
+ *
+ * Each bucket holds two entries. The first is only replaced by a position which needed at least as much work to solve and the
+ * second is always replaced, this keeps the expensive positions while still giving the recent ones a chance to be found.
+ *
+ * The table is shared by the threads analysing the top moves without any locking. Each entry is held as its data and its data
+ * XOR its key, so an entry torn by two threads writing at once no longer matches its key and is ignored.
+ *
+ * @author David
+ *
+ */
+class TranspositionTable {
+
+	protected static final long NOT_FOUND = 0;     // an entry's data is never zero since only positions with some work are stored
+
+	private static final int MAX_WORK = 0xFFFF;
+
+	private final long[] checks;     // the data XOR the key
+	private final long[] data;       // winning lines in the low 32 bits, best move + 1 in the next 16 and work in the top 16
+	private final int mask;
+
+	/**
+	 * The size is rounded up to a power of two
+	 */
+	protected TranspositionTable(int size) {
+
+		int capacity = 2;
+		while (capacity < size && capacity < (1 << 30)) {
+			capacity = capacity << 1;
+		}
+
+		this.checks = new long[capacity];
+		this.data = new long[capacity];
+		this.mask = capacity - 1;
+
+	}
+
+	/**
+	 * Returns the data held for this position or NOT_FOUND
+	 */
+	protected long probe(long key) {
+
+		int bucket = (int) (key & mask) & ~1;
+
+		for (int i=bucket; i < bucket + 2; i++) {
+			long entry = data[i];
+			if (entry != NOT_FOUND && (checks[i] ^ entry) == key) {
+				return entry;
+			}
+		}
+
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Store the winning lines and best move for a position, the best move is -1 if there isn't one
+	 */
+	protected void store(long key, int winningLines, int bestMove, int work) {
+
+		long entry = (winningLines & 0xFFFFFFFFL) | ((long) (bestMove + 1) & 0xFFFF) << 32 | ((long) Math.min(work, MAX_WORK)) << 48;
+
+		int bucket = (int) (key & mask) & ~1;
+
+		// the first entry is only replaced by the same position or one which needed at least as much work
+		long first = data[bucket];
+		int slot;
+		if (first == NOT_FOUND || (checks[bucket] ^ first) == key || getWork(first) <= work) {
+			slot = bucket;
+		} else {
+			slot = bucket + 1;
+		}
+
+		data[slot] = entry;
+		checks[slot] = entry ^ key;
+
+	}
+
+	// the number of slots in the table, however many of them have been filled
+	protected int capacity() {
+		return data.length;
+	}
+
+	protected static int getWinningLines(long entry) {
+		return (int) entry;
+	}
+
+	protected static int getBestMove(long entry) {
+		return (int) ((entry >>> 32) & 0xFFFF) - 1;
+	}
+
+	private static int getWork(long entry) {
+		return (int) (entry >>> 48);
+	}
+
+}
@@ -19,5 +19,8 @@ public class WitnessData {
     public int witnessGood;
     public int currentFlags;
     public boolean alwaysSatisfied;
+    public int witnessValue;
+    public long[] adjacentMask;    // a bit set of the squares being analysed which are adjacent to the witness
+    public int sampleMines;        // the mines in the current sample which are adjacent to the witness
     
 }
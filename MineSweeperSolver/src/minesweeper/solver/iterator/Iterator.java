@@ -46,4 +46,20 @@ abstract public class Iterator {
         return false;
     }
     
+    // the number of squares which changed between the previous sample and this one. If this is -1 then the
+    // changes aren't known and the whole sample must be looked at again.
+    public int getChangeCount() {
+        return -1;
+    }
+    
+    // the squares which stopped holding a ball in the last sample, paired by position with the added squares
+    public int[] getRemovedSquares() {
+        return null;
+    }
+    
+    // the squares which started holding a ball in the last sample
+    public int[] getAddedSquares() {
+        return null;
+    }
+    
 }
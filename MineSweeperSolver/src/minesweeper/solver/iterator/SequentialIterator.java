@@ -16,11 +16,27 @@ public class SequentialIterator extends Iterator {
     
     private int index;
 
+    // in minimal change mode each sample differs from the one before by moving a single ball
+    final private boolean minimalChange;
+    private boolean first = true;
+    private int removed = -1;     // the hole the last sample moved a ball out of, or -1 if nothing moved
+    private int added = -1;       // the hole the last sample moved a ball into
+    private int changedFrom;      // the positions in the sample which were changed by the last sample
+    private int changedTo;
+
     
     // a sequential iterator that puts n-balls in m-holes once in each possible way
     public SequentialIterator(int n, int m) {
+        this(n, m, false);
+    }
+
+    // if minimal change is requested the samples are produced in revolving door order (Knuth, Algorithm 7.2.1.3R)
+    // rather than lexicographic order. The samples are still held in ascending order.
+    public SequentialIterator(int n, int m, boolean minimalChange) {
         super(n,m);
 
+        this.minimalChange = minimalChange;
+
         sample = new int[n];
         
         index = n - 1;
@@ -31,7 +47,9 @@ public class SequentialIterator extends Iterator {
         
         // reduce the iterator by 1, since the first getSample() will increase it
         // by 1 again
-        sample[index]--;
+        if (!minimalChange) {
+            sample[index]--;
+        }
         
     }
     
@@ -44,6 +62,10 @@ public class SequentialIterator extends Iterator {
             System.err.println("trying to iterate after the end");
             return null;
         }
+
+        if (minimalChange) {
+            return getNextRevolvingDoor();
+        }
         
         index = start;
         
@@ -72,4 +94,202 @@ public class SequentialIterator extends Iterator {
         
     }
      
+    // move to the next combination in revolving door order. Knuth numbers the balls from 1 and
+    // has a sentinel ball at position t+1 in hole n, here c(j) is ball j in his notation.
+    private int[] getNextRevolvingDoor() {
+
+        removed = -1;
+        added = -1;
+
+        // the first sample is the initial position
+        if (first) {
+            first = false;
+            return sample;
+        }
+
+        final int t = numberBalls;
+
+        if (t == 0) {
+            more = false;
+            return null;
+        }
+
+        // the easy case, move the first ball
+        if (t % 2 == 1) {
+            if (sample[0] + 1 < c(2)) {
+                moveBall(0, sample[0] + 1);
+                return sample;
+            }
+        } else {
+            if (sample[0] > 0) {
+                moveBall(0, sample[0] - 1);
+                return sample;
+            }
+        }
+
+        int j = 2;
+        boolean decrease = (t % 2 == 1);
+
+        while (j <= t) {
+
+            if (decrease) {
+                // try to decrease ball j, at this point c(j) = c(j-1) + 1
+                if (c(j) >= j) {
+                    removed = c(j);
+                    added = j - 2;
+                    sample[j - 1] = sample[j - 2];
+                    sample[j - 2] = j - 2;
+                    changedFrom = j - 2;
+                    changedTo = j - 1;
+                    return sample;
+                }
+                j++;
+                decrease = false;
+            } else {
+                // try to increase ball j, at this point c(j-1) = j - 2
+                if (c(j) + 1 < c(j + 1)) {
+                    removed = j - 2;
+                    added = c(j) + 1;
+                    sample[j - 2] = sample[j - 1];
+                    sample[j - 1] = added;
+                    changedFrom = j - 2;
+                    changedTo = j - 1;
+                    return sample;
+                }
+                j++;
+                decrease = true;
+            }
+
+        }
+
+        more = false;
+        return null;
+
+    }
+
+    private int c(int j) {
+        if (j > numberBalls) {
+            return numberHoles;
+        } else {
+            return sample[j - 1];
+        }
+    }
+
+    private void moveBall(int position, int hole) {
+        removed = sample[position];
+        added = hole;
+        sample[position] = hole;
+        changedFrom = position;
+        changedTo = position;
+    }
+
+    // move the iterator so the next sample is the one at this position in the order, counting from zero.
+    // This must be done before the first sample is taken.
+    public void setPosition(long position) {
+
+        if (minimalChange) {
+            // the revolving door order for n holes is the order for n-1 holes followed by the
+            // order with one less ball in n-1 holes reversed and a ball in the last hole
+            int n = numberHoles;
+            int t = numberBalls;
+            while (t > 0) {
+                long without = binomial(n - 1, t);
+                if (position >= without) {
+                    position = binomial(n, t) - 1 - position;
+                    sample[t - 1] = n - 1;
+                    t--;
+                }
+                n--;
+            }
+
+        } else {
+            // skip over the samples which start with each hole in turn
+            int hole = 0;
+            for (int i=0; i < numberBalls; i++) {
+                long count = binomial(numberHoles - hole - 1, numberBalls - i - 1);
+                while (position >= count) {
+                    position = position - count;
+                    hole++;
+                    count = binomial(numberHoles - hole - 1, numberBalls - i - 1);
+                }
+                sample[i] = hole;
+                hole++;
+            }
+
+            // reduce the iterator by 1, since the first getSample() will increase it
+            if (numberBalls > 0) {
+                sample[numberBalls - 1]--;
+            }
+        }
+
+    }
+
+    // the number of ways k balls can be put in n holes
+    private static long binomial(int n, int k) {
+
+        if (k < 0 || k > n) {
+            return 0;
+        }
+
+        long result = 1;
+        for (int i=0; i < k; i++) {
+            result = result * (n - i) / (i + 1);
+        }
+
+        return result;
+    }
+
+    // In minimal change mode the revolving door order is cyclic, so once the samples are exhausted
+    // the iterator can go back to the first sample by moving a single ball. Returns the first sample.
+    public int[] restart() {
+
+        if (!minimalChange) {
+            throw new UnsupportedOperationException("Only an iterator in minimal change mode can be restarted");
+        }
+
+        removed = -1;
+        added = -1;
+        changedFrom = 0;
+        changedTo = -1;
+
+        for (int i=0; i < sample.length; i++) {
+            if (sample[i] != i) {
+                if (removed != -1) {
+                    throw new IllegalStateException("Restarting the iterator would move more than one ball");
+                }
+                removed = sample[i];
+                added = i;
+                sample[i] = i;
+                changedFrom = i;
+                changedTo = i;
+            }
+        }
+
+        more = true;
+        first = false;
+
+        return sample;
+
+    }
+
+    // the hole the last sample moved a ball out of, or -1 if the sample didn't move a ball
+    public int getRemoved() {
+        return removed;
+    }
+
+    // the hole the last sample moved a ball into, or -1 if the sample didn't move a ball
+    public int getAdded() {
+        return added;
+    }
+
+    // the first position in the sample which was changed by the last sample
+    public int getChangedFrom() {
+        return changedFrom;
+    }
+
+    // the last position in the sample which was changed by the last sample
+    public int getChangedTo() {
+        return changedTo;
+    }
+
 }
@@ -31,26 +31,49 @@ public class WitnessWebIterator extends Iterator {
     final private int top;
     final private int bottom;
     
+    // the bottom cog can be limited to a range of its positions, -1 means no limit
+    final private long bottomRange;
+    private long bottomSamples = 0;
+    
     private boolean done = false;
     
     private WitnessWeb web;
     
+    // in minimal change mode each cog moves a single mine per sample and the changes are reported
+    final private boolean minimalChange;
+    private int changes = -1;
+    private int[] removedSquares;
+    private int[] addedSquares;
+    
     public WitnessWebIterator(WitnessWeb web, int mines) {
         this(web, mines, -1);
     }
     
-    
-    // create an iterator which is like a set of rotating wheels
     public WitnessWebIterator(WitnessWeb web, int mines, int rotation) {
+        this(web, mines, rotation, false);
+    }
+    
+    public WitnessWebIterator(WitnessWeb web, int mines, int rotation, boolean minimalChange) {
+        this(web, mines, rotation == -1 ? new long[0] : new long[] {rotation}, 1, minimalChange);
+    }
+    
+    // create an iterator which is like a set of rotating wheels.
+    // The first cogs can be locked at the positions given, except the last of them which starts at its
+    // position and turns through 'range' positions. This allows the iterations to be split into
+    // non-overlapping pieces.
+    public WitnessWebIterator(WitnessWeb web, int mines, long[] position, long range, boolean minimalChange) {
          super(mines, web.getSquares().size());
          
         this.web = web;
+        this.minimalChange = minimalChange;
          
-        // if we are setting the position of the top cog then it can't ever change
-        if (rotation == -1) {
+        // if we are setting the position of the bottom cogs then only the last of them can change
+        if (position.length == 0) {
             bottom = 0;
+            bottomRange = -1;
         } else {
-            bottom = 1;
+            bottom = position.length - 1;
+            bottomRange = range;
         }
         
         int indSquares = 0;
@@ -67,7 +90,7 @@ public class WitnessWebIterator extends Iterator {
         for (Witness w: web.getIndependentWitnesses()) {
             squareOffset[cogi] = indSquares;
             mineOffset[cogi] = indMines;
-            cogs[cogi] = new SequentialIterator(w.getMines(), w.getSquares().size());
+            cogs[cogi] = new SequentialIterator(w.getMines(), w.getSquares().size(), minimalChange);
             //System.out.println("Cog has " + cogs[cogi].numberBalls + " mines and " + cogs[cogi].numberHoles + " squares");
             cogi++;
 
@@ -114,7 +137,7 @@ public class WitnessWebIterator extends Iterator {
         if (mines > indMines) {
             squareOffset[cogi] = indSquares;
             mineOffset[cogi] = indMines;
-            cogs[cogi] = new SequentialIterator(mines - indMines, web.getSquares().size() - indSquares);
+            cogs[cogi] = new SequentialIterator(mines - indMines, web.getSquares().size() - indSquares, minimalChange);
             top = cogi;
         } else {
             top = cogi - 1;
@@ -122,16 +145,18 @@ public class WitnessWebIterator extends Iterator {
 
         sample = new int[mines];
         
-        // if we are locking and rotating the top cog then do it
-        if (rotation != -1) {
-            for (int i=0; i < rotation; i++) {
-                cogs[0].getSample();
-            }
+        // each cog can move at most one mine per sample
+        removedSquares = new int[cogs.length];
+        addedSquares = new int[cogs.length];
+        
+        // if we are locking and rotating the bottom cogs then do it
+        for (int i=0; i < position.length; i++) {
+            cogs[i].setPosition(position[i]);
         }
         
         // now set up the initial sample position
         for (int i=0; i < top; i++) {
-            int[] s = cogs[i].getSample();
+            int[] s = nextCogSample(i);
             for (int j=0; j < s.length; j++) {
                 sample[mineOffset[i] + j] = squareOffset[i] + s[j];
             }
@@ -157,11 +182,11 @@ public class WitnessWebIterator extends Iterator {
             }
             int index = top;
 
-            int[] s = cogs[index].getSample();
+            int[] s = nextCogSample(index);
 
             while (s == null && index != bottom) {
                 index--;
-                s = cogs[index].getSample();
+                s = nextCogSample(index);
             }
 
             if (index == bottom && s == null) {
@@ -169,17 +194,29 @@ public class WitnessWebIterator extends Iterator {
                 return null;
             }
 
-            for (int j=0; j < s.length; j++) {
-                sample[mineOffset[index] + j] = squareOffset[index] + s[j];
-            }
-            index++;
-            while (index <= top) {
-                cogs[index] = new SequentialIterator(cogs[index].getBalls(), cogs[index].getHoles());
-                s = cogs[index].getSample();
+            if (minimalChange && iterationsDone != 0) {
+                changes = 0;
+                recordChange(index, s);
+                index++;
+                // the exhausted cogs go back to their first position, which only moves one mine
+                while (index <= top) {
+                    s = cogs[index].restart();
+                    recordChange(index, s);
+                    index++;
+                }
+            } else {
                 for (int j=0; j < s.length; j++) {
                     sample[mineOffset[index] + j] = squareOffset[index] + s[j];
                 }
                 index++;
+                while (index <= top) {
+                    cogs[index] = new SequentialIterator(cogs[index].getBalls(), cogs[index].getHoles(), minimalChange);
+                    s = cogs[index].getSample();
+                    for (int j=0; j < s.length; j++) {
+                        sample[mineOffset[index] + j] = squareOffset[index] + s[j];
+                    }
+                    index++;
+                }
             }
             
         /*
@@ -199,6 +236,58 @@ public class WitnessWebIterator extends Iterator {
         
     }
     
+    // turn the cog, the bottom cog stops when it has been through its range of positions
+    private int[] nextCogSample(int index) {
+        
+        if (index == bottom && bottomRange != -1) {
+            if (bottomSamples == bottomRange) {
+                return null;
+            }
+            bottomSamples++;
+        }
+        
+        return cogs[index].getSample();
+        
+    }
+    
+    // copy the positions the cog has changed into the sample and remember the mine it moved
+    private void recordChange(int index, int[] s) {
+        
+        SequentialIterator cog = cogs[index];
+        
+        if (cog.getRemoved() == -1) {
+            return;
+        }
+        
+        for (int j=cog.getChangedFrom(); j <= cog.getChangedTo(); j++) {
+            sample[mineOffset[index] + j] = squareOffset[index] + s[j];
+        }
+        
+        removedSquares[changes] = squareOffset[index] + cog.getRemoved();
+        addedSquares[changes] = squareOffset[index] + cog.getAdded();
+        changes++;
+        
+    }
+    
+    @Override
+    public int getChangeCount() {
+        if (minimalChange) {
+            return changes;
+        } else {
+            return -1;
+        }
+    }
+    
+    @Override
+    public int[] getRemovedSquares() {
+        return removedSquares;
+    }
+    
+    @Override
+    public int[] getAddedSquares() {
+        return addedSquares;
+    }
+    
     public List<Location> getLocations() {
         return location;
     }
@@ -2,6 +2,8 @@ package minesweeper.solver.settings;
 
 import java.math.BigInteger;
 
+import minesweeper.solver.settings.SolverSettings.NumericMode;
+
 public class SettingsFactory {
 	
 	public enum Setting {
@@ -27,6 +29,19 @@ public class SettingsFactory {
 		
 	}
 	
+	/**
+	 * As above but with the probabilities calculated using the given numeric mode
+	 */
+	final static public SolverSettings GetSettings(Setting setting, NumericMode numericMode) {
+		
+		SolverSettings settings = GetSettings(setting);
+		
+		settings.numericMode = numericMode;
+		
+		return settings;
+		
+	}
+	
 
     private static SolverSettings noBruteForce() {
 
@@ -5,12 +5,31 @@ import java.math.BigInteger;
 
 public class SolverSettings {
 
+	/**
+	 * BIG_DECIMAL calculates the probabilities exactly to Solver.DP decimal places and is the reference mode.
+	 * DOUBLE calculates them using doubles (log-space for the binomial weights) which is much quicker for bulk runs.
+	 */
+	public enum NumericMode {
+		BIG_DECIMAL,
+		DOUBLE;
+	}
+
 	protected int bruteForceMaxSolutions = 400;
 	protected int bruteForceMaxNodes = 50000;
 	protected int bruteForceTreeDepth = 50;
     protected BigInteger bruteForceMaxIterations = new BigInteger("50000000");  // 50 million
+    protected int bruteForceTableSize = 1 << 20;   // the most positions the brute force deep analysis transposition table can hold
 
     protected boolean doTiebreak = true;
+    
+    protected NumericMode numericMode = NumericMode.BIG_DECIMAL;
+    
+    protected long hashSeed = 0x2545F4914F6CDD1DL;   // seeds the Zobrist keys used to hash the brute force deep analysis positions
+    
+    protected long moveTimeLimit = 0;    // milliseconds allowed to find each move, zero means no limit
+    protected boolean anytime = false;   // use all the time allowed and play the best move found when it runs out
+    
+    protected String tablebaseFile = null;   // the endgame tablebase to consult for small isolated edges, null for none
 	
     private boolean locked;
     
@@ -29,6 +48,77 @@ public class SolverSettings {
     	return this;
     }
 
+    public SolverSettings setNumericMode(NumericMode numericMode) {
+    	
+    	if (!locked) {
+        	this.numericMode = numericMode;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * The largest number of positions the brute force deep analysis will hold in its transposition table. The table is
+     * smaller than this if the analysis can't explore enough nodes to fill it. Each position takes 16 bytes.
+     */
+    public SolverSettings setBruteForceTableSize(int bruteForceTableSize) {
+    	
+    	if (!locked) {
+        	this.bruteForceTableSize = bruteForceTableSize;
+    	}
+ 
+    	return this;
+    }
+    
+    public SolverSettings setHashSeed(long hashSeed) {
+    	
+    	if (!locked) {
+        	this.hashSeed = hashSeed;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * Once this many milliseconds have been spent looking for a move the solver stops any further analysis and plays the best move
+     * it has found so far. Zero means there is no limit.
+     */
+    public SolverSettings setMoveTimeLimit(long moveTimeLimit) {
+    	
+    	if (!locked) {
+        	this.moveTimeLimit = moveTimeLimit;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * In anytime mode, when there is a move time limit, the time limit replaces the limit on the number of nodes the brute force
+     * deep analysis can explore. If the time runs out the best of the first moves analysed so far is played rather than
+     * the analysis being abandoned.
+     */
+    public SolverSettings setAnytime(boolean anytime) {
+    	
+    	if (!locked) {
+        	this.anytime = anytime;
+    	}
+ 
+    	return this;
+    }
+    
+    /**
+     * The endgame tablebase to look up small isolated edges in before analysing them. The tablebase is built by
+     * EndgameTablebaseGenerator. Null means no tablebase is used.
+     */
+    public SolverSettings setTablebaseFile(String tablebaseFile) {
+    	
+    	if (!locked) {
+        	this.tablebaseFile = tablebaseFile;
+    	}
+ 
+    	return this;
+    }
+    
 	public int getBruteForceMaxSolutions() {
 		return bruteForceMaxSolutions;
 	}
@@ -45,10 +135,34 @@ public class SolverSettings {
 		return bruteForceMaxIterations;
 	}
 
+	public int getBruteForceTableSize() {
+		return bruteForceTableSize;
+	}
+
 	public boolean isDoTiebreak() {
 		return doTiebreak;
 	}
 
+	public NumericMode getNumericMode() {
+		return numericMode;
+	}
+
+	public long getHashSeed() {
+		return hashSeed;
+	}
+
+	public long getMoveTimeLimit() {
+		return moveTimeLimit;
+	}
+
+	public boolean isAnytime() {
+		return anytime;
+	}
+
+	public String getTablebaseFile() {
+		return tablebaseFile;
+	}
+
 	public boolean isLocked() {
 		return locked;
 	}
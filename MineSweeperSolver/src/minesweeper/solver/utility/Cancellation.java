@@ -0,0 +1,60 @@
+package minesweeper.solver.utility;
+
+/**
+ * Lets the long running parts of the solver know they should stop. This happens when a stop is requested
+ * or when the time allowed has run out. Each part checks this at convenient points and, if it has
+ * been cancelled, leaves with the best it has found so far.
+ */
+public class Cancellation {
+
+	private final boolean hasDeadline;
+	private final long deadline;      // compared to System.nanoTime()
+
+	private volatile boolean stopRequested = false;
+	private volatile boolean expired = false;
+
+	/**
+	 * @param timeLimit the number of milliseconds allowed, zero or less means there is no limit
+	 */
+	public Cancellation(long timeLimit) {
+
+		if (timeLimit > 0) {
+			hasDeadline = true;
+			deadline = System.nanoTime() + timeLimit * 1000000L;
+		} else {
+			hasDeadline = false;
+			deadline = 0;
+		}
+
+	}
+
+	public void requestStop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * True if a stop has been requested or the deadline has passed
+	 */
+	public boolean isCancelled() {
+
+		if (stopRequested || expired) {
+			return true;
+		}
+
+		if (hasDeadline && System.nanoTime() - deadline > 0) {
+			expired = true;
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	public boolean hasExpired() {
+		return expired;
+	}
+
+}
@@ -0,0 +1,95 @@
+package minesweeper.solver;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import minesweeper.gamestate.GameStateModel;
+import minesweeper.gamestate.GameStateModelViewer;
+import minesweeper.gamestate.GameStateReader;
+import minesweeper.gamestate.MoveMethod;
+import minesweeper.solver.settings.SettingsFactory;
+import minesweeper.solver.settings.SettingsFactory.Setting;
+import minesweeper.structure.Action;
+import minesweeper.structure.Location;
+
+/**
+ * A position from the benchmark corpus, loaded once for each trial with everything the solver works out before its expensive steps.
+ *
+ * The corpus is a set of games saved part way through, each at a point where the solver has to guess:
+ * <ul>
+ * <li>easy - a beginner board soon after the opening</li>
+ * <li>dense - a 30x16 board with 130 mines and a long edge</li>
+ * <li>large_frontier - an expert board with many witnesses and witnessed tiles</li>
+ * <li>endgame - an expert board with 14 tiles left, small enough for brute force deep analysis</li>
+ * </ul>
+ * The positions are read by {@link GameStateReader#load} from the folder named by the system property
+ * "minesweeper.benchmark.positions", or the "positions" folder of this project if it isn't set. The flags in the positions were placed
+ * by the solver, so they are confirmed as they were when the solver reached the position.
+ *
+ * @author David
+ */
+@State(Scope.Thread)
+public class BenchmarkPosition {
+
+	@Param({"easy", "dense", "large_frontier", "endgame"})
+	public String position;
+
+	protected GameStateModelViewer game;
+	protected Solver solver;
+	protected BoardState boardState;
+
+	protected List<Location> witnesses;
+	protected List<Location> witnessedTiles;
+	protected int unrevealed;
+	protected int minesLeft;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+
+		game = load(position);
+		solver = new Solver(game, SettingsFactory.GetSettings(Setting.SMALL_ANALYSIS), false);
+
+		boardState = new BoardState(solver);
+		for (int y=0; y < game.getHeight(); y++) {
+			for (int x=0; x < game.getWidth(); x++) {
+				Location tile = new Location(x, y);
+				if (game.query(tile) == GameStateModel.FLAG) {
+					boardState.setAction(new Action(tile, Action.FLAG, MoveMethod.TRIVIAL, "", BigDecimal.ONE));
+				}
+			}
+		}
+		boardState.process();
+
+		witnesses = boardState.getAllLivingWitnesses();
+		witnessedTiles = new ArrayList<>(boardState.getUnrevealedArea(witnesses).getLocations());
+		unrevealed = boardState.getTotalUnrevealedCount();
+		minesLeft = game.getMines() - boardState.getConfirmedFlagCount();
+
+	}
+
+	/**
+	 * The web of the witnesses and the tiles next to them, built the way the solver builds it before running the probability engine
+	 */
+	protected WitnessWeb buildWeb() {
+		return new WitnessWeb(boardState, witnesses, witnessedTiles);
+	}
+
+	/**
+	 * Load a position from the corpus by name
+	 */
+	protected static GameStateModelViewer load(String name) throws Exception {
+
+		String folder = System.getProperty("minesweeper.benchmark.positions", "positions");
+
+		return GameStateReader.load(new File(folder, name + ".txt"));
+	}
+
+}
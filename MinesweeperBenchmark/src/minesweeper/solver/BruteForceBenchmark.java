@@ -0,0 +1,113 @@
+package minesweeper.solver;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the brute force over the whole board, which runs the crunchers to find every solution, and of the deep analysis
+ * of those solutions. Only the endgame position is small enough for these.
+ *
+ * @author David
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BruteForceBenchmark {
+
+	@State(Scope.Thread)
+	public static class Endgame {
+
+		@Param({"endgame"})
+		public String position;
+
+		protected BenchmarkPosition loaded;
+
+		@Setup(Level.Trial)
+		public void load() throws Exception {
+			loaded = new BenchmarkPosition();
+			loaded.position = position;
+			loaded.load();
+		}
+
+		/**
+		 * A brute force of every unrevealed tile, built the way the solver builds it once the probability engine finds few enough solutions
+		 */
+		protected BruteForce buildBruteForce() {
+
+			WitnessWeb wholeBoard = new WitnessWeb(loaded.boardState, loaded.witnesses, loaded.boardState.getAllUnrevealedSquares());
+
+			return new BruteForce(loaded.solver, loaded.boardState, wholeBoard, loaded.minesLeft, loaded.solver.preferences.getBruteForceMaxIterations(), "Benchmark");
+		}
+
+	}
+
+	/**
+	 * The brute force finds the witness web's independent witnesses as it runs, so each one needs a new web
+	 */
+	@State(Scope.Thread)
+	public static class FreshBruteForce {
+
+		protected BruteForce bruteForce;
+
+		@Setup(Level.Invocation)
+		public void build(Endgame position) {
+			bruteForce = position.buildBruteForce();
+		}
+
+	}
+
+	/**
+	 * The deep analysis is filled with the solutions found by a brute force and can only be processed once
+	 */
+	@State(Scope.Thread)
+	public static class FreshAnalysis {
+
+		protected BruteForceAnalysisModel analysis;
+
+		@Setup(Level.Invocation)
+		public void build(Endgame position) {
+
+			BruteForce bruteForce = position.buildBruteForce();
+			bruteForce.process();
+
+			analysis = bruteForce.getBruteForceAnalysis();
+			if (analysis == null) {
+				throw new IllegalStateException("The brute force of position " + position.position + " didn't produce a deep analysis");
+			}
+
+		}
+
+	}
+
+	@Benchmark
+	public BigInteger bruteForce(FreshBruteForce fresh) {
+
+		fresh.bruteForce.process();
+
+		return fresh.bruteForce.getSolutionCount();
+	}
+
+	@Benchmark
+	public int bruteForceAnalysis(FreshAnalysis fresh) {
+
+		fresh.analysis.process();
+
+		return fresh.analysis.getNodeCount();
+	}
+
+}
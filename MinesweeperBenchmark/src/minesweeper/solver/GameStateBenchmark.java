@@ -0,0 +1,82 @@
+package minesweeper.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import minesweeper.gamestate.GameStateModel;
+import minesweeper.gamestate.GameStateModelViewer;
+import minesweeper.structure.Action;
+import minesweeper.structure.Location;
+
+/**
+ * A benchmark of playing moves on the game, which is done once for every move the solver returns. Each invocation clears every
+ * safe tile left on a freshly loaded position, so the zeros cascade and the game finishes as won.
+ *
+ * @author David
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+
+	@State(Scope.Thread)
+	public static class FreshGame {
+
+		@Param({"easy", "dense", "large_frontier", "endgame"})
+		public String position;
+
+		protected List<Action> safeClears;
+		protected GameStateModelViewer game;
+
+		@Setup(Level.Trial)
+		public void findSafeTiles() throws Exception {
+
+			GameStateModelViewer loaded = BenchmarkPosition.load(position);
+
+			safeClears = new ArrayList<>();
+			for (int y=0; y < loaded.getHeight(); y++) {
+				for (int x=0; x < loaded.getWidth(); x++) {
+					Location tile = new Location(x, y);
+					if (loaded.query(tile) == GameStateModel.HIDDEN && loaded.privilegedQuery(tile, true) != GameStateModel.MINE) {
+						safeClears.add(new Action(tile, Action.CLEAR));
+					}
+				}
+			}
+
+		}
+
+		// the moves change the game, so each invocation starts from the saved position again
+		@Setup(Level.Invocation)
+		public void load() throws Exception {
+			game = BenchmarkPosition.load(position);
+		}
+
+	}
+
+	@Benchmark
+	public int doAction(FreshGame fresh) {
+
+		for (Action action: fresh.safeClears) {
+			fresh.game.doAction(action);
+		}
+
+		return fresh.game.getGameState();
+	}
+
+}
@@ -0,0 +1,77 @@
+package minesweeper.solver;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the steps the solver takes on every position: reading the board, building the witness web and finding the
+ * probabilities and number of solutions.
+ *
+ * @author David
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	/**
+	 * The probability engine and solution counter add boxes to the web they are given, so they each need a new one
+	 */
+	@State(Scope.Thread)
+	public static class FreshWeb {
+
+		protected WitnessWeb web;
+
+		@Setup(Level.Invocation)
+		public void build(BenchmarkPosition position) {
+			web = position.buildWeb();
+		}
+
+	}
+
+	@Benchmark
+	public BoardState boardStateProcess(BenchmarkPosition position) {
+
+		position.boardState.process();
+
+		return position.boardState;
+	}
+
+	@Benchmark
+	public WitnessWeb witnessWeb(BenchmarkPosition position) {
+		return position.buildWeb();
+	}
+
+	@Benchmark
+	public BigInteger probabilityEngine(BenchmarkPosition position, FreshWeb fresh) {
+
+		ProbabilityEngineFast pe = new ProbabilityEngineFast(position.boardState, fresh.web, position.unrevealed, position.minesLeft);
+		pe.process();
+
+		return pe.getSolutionCount();
+	}
+
+	@Benchmark
+	public BigInteger solutionCounter(BenchmarkPosition position, FreshWeb fresh) {
+
+		SolutionCounter counter = new SolutionCounter(position.boardState, fresh.web, position.unrevealed, position.minesLeft);
+		counter.process();
+
+		return counter.getSolutionCount();
+	}
+
+}
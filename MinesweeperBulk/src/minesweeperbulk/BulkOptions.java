@@ -0,0 +1,224 @@
+package minesweeperbulk;
+
+import java.util.Random;
+
+import minesweeper.settings.GameSettings;
+import minesweeper.settings.GameType;
+import minesweeper.solver.settings.SettingsFactory.Setting;
+
+/**
+ * The options for a bulk run, read from the command line. Anything not given keeps the value the bulk runs have always used.
+ *
+ * @author David
+ */
+public class BulkOptions {
+
+	protected static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: MinesweeperBulk [options]",
+			"  -board beginner|advanced|expert|width,height,mines   the board to play (default expert)",
+			"  -type easy|standard|hard                             the game type (default standard)",
+			"  -solver no_brute_force|small_analysis|large_analysis|very_large_analysis   the solver settings (default small_analysis)",
+			"  -games n                                             the number of games to play (default 50000)",
+			"  -threads n                                           the number of games played at once (default the number of processors)",
+			"  -seed n|random                                       the seed the games are made from (default 259355150)",
+			"  -output file                                         write the result of each game to the file as it is played",
+			"  -format csv|binary                                   the format of the output file (default csv)",
+			"  -precision h                                         stop once the win rate is known to +/- h percent at 95% confidence",
+			"  -mingames n                                          the fewest games played before -precision can stop the run (default 500)",
+			"  -sprt p0,p1[,alpha,beta]                             stop once a sequential test accepts a win rate of p0 or p1 percent",
+			"                                                       (alpha and beta are the error rates, default 0.05)",
+			"  -compare no_brute_force|small_analysis|large_analysis|very_large_analysis   also play every game with these solver settings",
+			"                                                       and compare the two game by game (the results go to file-compare)");
+
+	protected GameSettings gameSettings = GameSettings.EXPERT;
+	protected GameType gameType = GameType.STANDARD;
+	protected Setting setting = Setting.SMALL_ANALYSIS;
+	protected int games = 50000;
+	protected int threads = Runtime.getRuntime().availableProcessors();
+	protected long seed = 259355150;
+	protected String output = null;
+	protected GameResultWriter.Format format = GameResultWriter.Format.CSV;
+	protected StoppingRule stoppingRule = null;
+	protected Setting compareSetting = null;
+
+	// the early stopping options, only used to build the stopping rule once all the options are read
+	private double precision = 0;
+	private int minGames = 500;
+	private double[] sprt = null;
+
+	/**
+	 * Read the options, throws an IllegalArgumentException describing the first one which isn't valid
+	 */
+	protected static BulkOptions parse(String[] args) {
+
+		BulkOptions options = new BulkOptions();
+
+		for (int i=0; i < args.length; i++) {
+
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("No value given for " + option);
+			}
+			String value = args[++i];
+
+			try {
+				switch (option.toLowerCase()) {
+				case "-board":
+					options.gameSettings = parseBoard(value);
+					break;
+				case "-type":
+					options.gameType = GameType.valueOf(value.toUpperCase());
+					break;
+				case "-solver":
+					options.setting = Setting.valueOf(value.toUpperCase());
+					break;
+				case "-games":
+					options.games = positive(option, Integer.parseInt(value));
+					break;
+				case "-threads":
+					options.threads = positive(option, Integer.parseInt(value));
+					break;
+				case "-seed":
+					if (value.equalsIgnoreCase("random")) {
+						options.seed = (new Random()).nextInt();
+					} else {
+						options.seed = Long.parseLong(value);
+					}
+					break;
+				case "-output":
+					options.output = value;
+					break;
+				case "-format":
+					options.format = GameResultWriter.Format.valueOf(value.toUpperCase());
+					break;
+				case "-precision":
+					options.precision = Double.parseDouble(value);
+					if (options.precision <= 0 || options.precision >= 50) {
+						throw new IllegalArgumentException("The value for " + option + " must be between 0 and 50 percent");
+					}
+					break;
+				case "-mingames":
+					options.minGames = positive(option, Integer.parseInt(value));
+					break;
+				case "-sprt":
+					options.sprt = parseSprt(value);
+					break;
+				case "-compare":
+					options.compareSetting = Setting.valueOf(value.toUpperCase());
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The value '" + value + "' for " + option + " is not a number");
+			} catch (IllegalArgumentException e) {
+				if (e.getMessage() != null && e.getMessage().startsWith("No enum constant")) {
+					throw new IllegalArgumentException("The value '" + value + "' for " + option + " is not recognised");
+				}
+				throw e;
+			}
+		}
+
+		if (options.precision > 0 && options.sprt != null) {
+			throw new IllegalArgumentException("Only one of -precision and -sprt can be given");
+		}
+
+		// the stopping rules test the win rate of one setting, which isn't the question a comparison asks
+		if (options.compareSetting != null && (options.precision > 0 || options.sprt != null)) {
+			throw new IllegalArgumentException("-compare can't be used with -precision or -sprt");
+		}
+
+		if (options.precision > 0) {
+			options.stoppingRule = StoppingRule.precision(options.precision / 100, options.minGames);
+		} else if (options.sprt != null) {
+			options.stoppingRule = StoppingRule.sprt(options.sprt[0], options.sprt[1], options.sprt[2], options.sprt[3]);
+		}
+
+		return options;
+	}
+
+	// p0,p1 as percentages and optionally alpha,beta as probabilities
+	private static double[] parseSprt(String value) {
+
+		String[] parts = value.split(",");
+		if (parts.length != 2 && parts.length != 4) {
+			throw new IllegalArgumentException("The test '" + value + "' should be p0,p1 or p0,p1,alpha,beta");
+		}
+
+		double[] result = {0, 0, 0.05d, 0.05d};
+		for (int i=0; i < parts.length; i++) {
+			result[i] = Double.parseDouble(parts[i].trim());
+		}
+
+		result[0] = result[0] / 100;
+		result[1] = result[1] / 100;
+
+		if (result[0] <= 0 || result[0] >= 1 || result[1] <= 0 || result[1] >= 1 || result[0] == result[1]) {
+			throw new IllegalArgumentException("The win rates in '" + value + "' must be different and between 0 and 100 percent");
+		}
+		if (result[2] <= 0 || result[2] >= 0.5 || result[3] <= 0 || result[3] >= 0.5) {
+			throw new IllegalArgumentException("The error rates in '" + value + "' must be between 0 and 0.5");
+		}
+
+		return result;
+	}
+
+	private static GameSettings parseBoard(String value) {
+
+		switch (value.toLowerCase()) {
+		case "beginner":
+			return GameSettings.BEGINNER;
+		case "advanced":
+			return GameSettings.ADVANCED;
+		case "expert":
+			return GameSettings.EXPERT;
+		}
+
+		String[] parts = value.split(",");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("The board '" + value + "' should be beginner, advanced, expert or width,height,mines");
+		}
+
+		int width = positive("-board width", Integer.parseInt(parts[0].trim()));
+		int height = positive("-board height", Integer.parseInt(parts[1].trim()));
+		int mines = positive("-board mines", Integer.parseInt(parts[2].trim()));
+
+		if (mines >= width * height) {
+			throw new IllegalArgumentException("The board " + value + " has too many mines");
+		}
+
+		return GameSettings.create(width, height, mines);
+	}
+
+	private static int positive(String option, int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException("The value for " + option + " must be at least 1");
+		}
+		return value;
+	}
+
+	/**
+	 * The file the results of the comparison setting are written to, the output file with "-compare" before its extension
+	 */
+	protected String comparisonOutput() {
+
+		int dot = output.lastIndexOf('.');
+		if (dot <= Math.max(output.lastIndexOf('/'), output.lastIndexOf('\\'))) {
+			return output + "-compare";
+		}
+
+		return output.substring(0, dot) + "-compare" + output.substring(dot);
+	}
+
+	protected String describe() {
+		String text = gameSettings.description() + ", " + gameType + " games, " + setting + ", " + games + " games on " + threads + " threads, seed " + seed;
+		if (stoppingRule != null) {
+			text = text + ", " + stoppingRule.describe();
+		}
+		if (compareSetting != null) {
+			text = text + ", compared with " + compareSetting;
+		}
+		return text;
+	}
+
+}
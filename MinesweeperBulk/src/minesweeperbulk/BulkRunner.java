@@ -0,0 +1,475 @@
+package minesweeperbulk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import minesweeper.gamestate.GameFactory;
+import minesweeper.gamestate.GameStateModel;
+import minesweeper.gamestate.MoveMethod;
+import minesweeper.settings.GameSettings;
+import minesweeper.settings.GameType;
+import minesweeper.solver.Solver;
+import minesweeper.solver.settings.SettingsFactory;
+import minesweeper.solver.settings.SettingsFactory.Setting;
+import minesweeper.solver.settings.SolverSettings;
+import minesweeper.structure.Action;
+
+/**
+ * Plays a run of games on a number of worker threads.
+ *
+ * The games are handed out in order and the n'th game is always played on the board made from the n'th seed of the run's seed stream,
+ * whichever worker plays it. Each game gathers its own {@link BulkStatistics statistics} and these are added to the run's totals, and
+ * its result written to the result file, in game order however the games finish. So a run gives the same totals and the same file
+ * whatever the number of threads.
+ *
+ * A {@link StoppingRule} can end the run early. It sees the games in game order too, so the run stops at the same game however many
+ * threads are playing. Any later games which have already been played are thrown away.
+ *
+ * In a comparison run each game is also played with a second solver setting on the same board, and the pair of results is added to
+ * the {@link PairedStatistics paired statistics}.
+ *
+ * @author David
+ */
+public class BulkRunner {
+
+	private static final DecimalFormat MASK = new DecimalFormat("#0.000");
+
+	private static final BigDecimal BIG_HALF = new BigDecimal("0.5");
+
+	private final long seed;
+	private final GameType gameType;
+	private final GameSettings gameSettings;
+	private final Setting setting;
+	private final int maxGames;
+	private final int threads;
+	private final int step;
+
+	private GameResultWriter writer;
+	private StoppingRule stoppingRule;
+
+	// the setting each game is also played with in a comparison run
+	private Setting compareSetting;
+	private GameResultWriter compareWriter;
+
+	// the seed stream and how far through the run we are, guarded by this
+	private final Random seeder;
+	private int nextIndex = 0;
+	private int inPlay = 0;
+	private int finishedCounted = 0;    // games finished which count, whether or not they have been added to the totals yet
+	private int counted = 0;
+	private int countedWins = 0;
+	private boolean stopped = false;
+
+	// finished games waiting for the games before them, guarded by this
+	private final Map<Integer, FinishedGame> finished = new HashMap<>();
+	private int nextToAdd = 0;
+	private final BulkStatistics totals = new BulkStatistics();
+	private final BulkStatistics compareTotals = new BulkStatistics();
+	private final PairedStatistics paired = new PairedStatistics();
+
+	// a game handed out to a worker
+	private static class Game {
+
+		private final int index;
+		private final long seed;
+
+		private Game(int index, long seed) {
+			this.index = index;
+			this.seed = seed;
+		}
+
+	}
+
+	// a game which has been played
+	private static class FinishedGame {
+
+		private final GameResultWriter.GameRecord record;
+		private final BulkStatistics stats;
+
+		// the game played with the comparison setting, if there is one
+		private GameResultWriter.GameRecord compareRecord;
+		private BulkStatistics compareStats;
+
+		private FinishedGame(GameResultWriter.GameRecord record, BulkStatistics stats) {
+			this.record = record;
+			this.stats = stats;
+		}
+
+	}
+
+	private class Worker implements Runnable {
+
+		private Throwable failure;
+
+		@Override
+		public void run() {
+
+			try {
+				Game game = nextGame();
+				while (game != null) {
+
+					FinishedGame finished = play(game, setting);
+
+					// the same seed gives the same board, so both settings play the identical game
+					if (compareSetting != null) {
+						FinishedGame other = play(game, compareSetting);
+						finished.compareRecord = other.record;
+						finished.compareStats = other.stats;
+					}
+
+					gameFinished(finished);
+
+					game = nextGame();
+				}
+			} catch (Throwable e) {
+				failure = e;
+				workerFailed();
+			}
+
+		}
+
+		private FinishedGame play(Game game, Setting playSetting) {
+
+			GameStateModel gs = GameFactory.create(gameType, gameSettings, game.seed);
+			SolverSettings settings = SettingsFactory.GetSettings(playSetting);
+			Solver solver = new Solver(gs, settings, false);
+
+			BulkStatistics stats = new BulkStatistics();
+			GameResultWriter.GameRecord record = playGame(game, gs, solver, stats);
+			stats.addResult(game.index, record.result);
+
+			return new FinishedGame(record, stats);
+		}
+
+	}
+
+	public BulkRunner(long seed, GameType gameType, GameSettings gameSettings, Setting setting, int maxGames, int threads) {
+
+		this.seed = seed;
+		this.gameType = gameType;
+		this.gameSettings = gameSettings;
+		this.setting = setting;
+		this.maxGames = maxGames;
+		this.threads = Math.max(1, threads);
+		this.step = Math.max(1, maxGames / 5000);
+
+		this.seeder = new Random(seed);
+
+	}
+
+	/**
+	 * Write the result of each game to this writer as the run goes along
+	 */
+	public void setResultWriter(GameResultWriter writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * End the run once this rule is satisfied, rather than only after the maximum number of games
+	 */
+	public void setStoppingRule(StoppingRule stoppingRule) {
+		this.stoppingRule = stoppingRule;
+	}
+
+	/**
+	 * Also play every game with this setting, on the same board, so the two settings can be compared game by game
+	 */
+	public void setComparison(Setting compareSetting) {
+		this.compareSetting = compareSetting;
+	}
+
+	/**
+	 * Write the result of each game played with the comparison setting to this writer
+	 */
+	public void setComparisonWriter(GameResultWriter compareWriter) {
+		this.compareWriter = compareWriter;
+	}
+
+	/**
+	 * Play the games and return the merged statistics
+	 */
+	public BulkStatistics run() {
+
+		List<Worker> workers = new ArrayList<>();
+		List<Thread> running = new ArrayList<>();
+
+		for (int i=0; i < threads; i++) {
+			Worker worker = new Worker();
+			Thread thread = new Thread(worker, "Bulk worker " + i);
+			workers.add(worker);
+			running.add(thread);
+			thread.start();
+		}
+
+		for (int i=0; i < threads; i++) {
+			try {
+				running.get(i).join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for the bulk workers", e);
+			}
+		}
+
+		// every worker has stopped, so rethrow any failure as it was thrown
+		for (Worker worker: workers) {
+			if (worker.failure instanceof Error) {
+				throw (Error) worker.failure;
+			} else if (worker.failure instanceof RuntimeException) {
+				throw (RuntimeException) worker.failure;
+			} else if (worker.failure != null) {
+				throw new RuntimeException("A bulk worker failed", worker.failure);
+			}
+		}
+
+		return totals;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getMaxGames() {
+		return maxGames;
+	}
+
+	/**
+	 * The merged statistics of the games played with the comparison setting, once the run is over
+	 */
+	public BulkStatistics getComparisonStatistics() {
+		return compareTotals;
+	}
+
+	/**
+	 * The game by game comparison of the two settings, once the run is over
+	 */
+	public PairedStatistics getPairedStatistics() {
+		return paired;
+	}
+
+	/**
+	 * True if the stopping rule ended the run before the maximum number of games
+	 */
+	public synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	// a worker which fails stops the run, so the other workers don't start any more games
+	private synchronized void workerFailed() {
+		stopped = true;
+	}
+
+	// hand out the next game, or null if the run has stopped or enough games are already being played to finish it
+	private synchronized Game nextGame() {
+
+		if (stopped) {
+			return null;
+		}
+
+		// an ignored game doesn't count, so the run only ends when enough games have counted
+		if (finishedCounted + inPlay >= maxGames) {
+			return null;
+		}
+
+		inPlay++;
+
+		return new Game(nextIndex++, seeder.nextLong());
+	}
+
+	// hold the game until all the games before it have finished and then add them to the totals in game order
+	private synchronized void gameFinished(FinishedGame game) {
+
+		inPlay--;
+		if (game.record.result != BulkStatistics.IGNORE) {
+			finishedCounted++;
+		}
+
+		finished.put(game.record.index, game);
+
+		FinishedGame next = finished.remove(nextToAdd);
+		while (next != null) {
+			nextToAdd++;
+			if (!stopped) {
+				addToTotals(next);
+			}
+			next = finished.remove(nextToAdd);
+		}
+
+	}
+
+	private void addToTotals(FinishedGame game) {
+
+		totals.merge(game.stats);
+		write(writer, game.record);
+
+		if (game.compareRecord != null) {
+			compareTotals.merge(game.compareStats);
+			write(compareWriter, game.compareRecord);
+			paired.add(game.record, game.compareRecord);
+		}
+
+		int result = game.record.result;
+		if (result == BulkStatistics.IGNORE) {
+			return;
+		}
+
+		counted++;
+		if (result == BulkStatistics.WON) {
+			countedWins++;
+		}
+
+		if (counted % step == 0) {
+			double p = (double) countedWins / (double) counted;
+			double err = Math.sqrt(p * ( 1- p) / (double) counted) * 1.9599d;
+			System.out.println("played " + counted + "/" + maxGames + " games, Wins " + countedWins + " (" + MASK.format(p * 100) + " +/- " + MASK.format(err * 100) +  "%)");
+		}
+
+		if (stoppingRule != null && stoppingRule.update(result == BulkStatistics.WON)) {
+			stopped = true;
+		}
+
+	}
+
+	private void write(GameResultWriter to, GameResultWriter.GameRecord record) {
+
+		if (to == null) {
+			return;
+		}
+
+		try {
+			to.write(record);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write the game results", e);
+		}
+
+	}
+
+	static private int get3BV(GameStateModel gs) {
+		if (gs.supports3BV()) {
+			return gs.get3BV();
+		} else {
+			return 0;
+		}
+	}
+
+	static private GameResultWriter.GameRecord playGame(Game game, GameStateModel gs, Solver solver, BulkStatistics stats) {
+
+		int state;
+
+		int moveCount = 0;
+		long solveTime = 0;
+
+		boolean certain = true;
+		double probability = 1;
+
+		int gameGuesses = 0;
+
+
+		play: while (true) {
+
+			Action[] moves;
+			long solveStart = System.currentTimeMillis();
+			try {
+				solver.start();
+				moves = solver.getResult();
+			} catch (Exception e) {
+				System.out.println("Game " + gs.showGameKey() + " has thrown an exception!");
+				e.printStackTrace();
+				return new GameResultWriter.GameRecord(game.index, game.seed, BulkStatistics.IGNORE, gameGuesses, moveCount, solveTime, get3BV(gs));
+			}
+			solveTime = solveTime + System.currentTimeMillis() - solveStart;
+
+			if (moves.length == 0) {
+				System.err.println(gs.getSeed() + " - No moves returned by the solver");
+				System.exit(1);
+			}
+
+			// play all the moves until all done, or the game is won or lost
+			for (int i=0; i < moves.length; i++) {
+
+				MoveMethod method = moves[i].getMoveMethod();
+				BigDecimal prob = moves[i].getBigProb();
+
+				if (prob.compareTo(BigDecimal.ZERO) <= 0 || prob.compareTo(BigDecimal.ONE) > 0) {
+					System.out.println("Game (" + gs.showGameKey() + ") move with probability of " + prob + "! - " + moves[i].asString());
+				} else if (!moves[i].isCertainty()) {
+					certain = false;
+					probability = probability * prob.doubleValue();
+				}
+
+				gs.doAction(moves[i]);
+				moveCount++;
+
+				state = gs.getGameState();
+
+				if (prob.compareTo(BIG_HALF) == 0 && method != MoveMethod.UNAVOIDABLE_GUESS) { // unavoidable guesses have an unreliable probability
+					stats.fiftyFiftyGuess++;
+					if (state == GameStateModel.STARTED || state == GameStateModel.WON) {
+						stats.fiftyFiftyWon++;
+					} else {
+						stats.fiftyFiftyLost++;
+					}
+				}
+
+
+				// only monitor good guesses (brute force, probability engine, zonal, opening book and hooks)
+				if (state == GameStateModel.STARTED || state == GameStateModel.WON) {
+					if (!moves[i].isCertainty() ) {
+						gameGuesses++;
+						stats.guesses++;
+						if (method != MoveMethod.UNAVOIDABLE_GUESS) {  // unavoidable guesses have an inacuurate probability
+							stats.fairGuesses++;
+							stats.addFairness(1d);
+						}
+					}
+				} else { // otherwise the guess resulted in a loss
+					if (!moves[i].isCertainty()) {
+						gameGuesses++;
+						stats.guesses++;
+						if (method != MoveMethod.UNAVOIDABLE_GUESS) {  // unavoidable guesses have an inacuurate probability
+							stats.fairGuesses++;
+							stats.addFairness(- prob.doubleValue() / (1d - prob.doubleValue()));
+						}
+					}
+				}
+
+				if (state == GameStateModel.LOST && moves[i].isCertainty()) {
+					System.out.println("Game (" + gs.showGameKey() + ") lost on move with probablity = " + prob + " :" + moves[i].asString());
+				}
+
+				if (state == GameStateModel.LOST || state == GameStateModel.WON) {
+					break play;
+				}
+			}
+		}
+
+
+		int result;
+		if (state == GameStateModel.LOST) {
+			stats.losingGuesses = stats.losingGuesses + gameGuesses;
+			result = BulkStatistics.LOST;
+		} else {
+			stats.winningGuesses = stats.winningGuesses + gameGuesses;
+			if (certain) {
+				stats.neverGuessed++;
+			} else if (probability > 1) {
+				System.out.println("Game (" + gs.showGameKey() + ") has a total probablity = " + probability);
+			} else {
+				int i = (int) (probability * 10);
+				stats.guessMatrix[i]++;
+			}
+			result = BulkStatistics.WON;
+		}
+
+		return new GameResultWriter.GameRecord(game.index, game.seed, result, gameGuesses, moveCount, solveTime, get3BV(gs));
+
+
+	}
+
+}
@@ -0,0 +1,138 @@
+package minesweeperbulk;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+
+/**
+ * The statistics gathered by a worker playing bulk games. Each worker keeps its own and they are merged when the run is over.
+ *
+ * Everything is held so that merging gives the same totals whichever worker played which game. The fairness is summed exactly and the
+ * outcome of each game is held against its position in the run, so the mastery can be worked out in game order after the merge.
+ *
+ * @author David
+ */
+public class BulkStatistics {
+
+	protected final static int WON = 1;
+	protected final static int LOST = 2;
+	protected final static int IGNORE = 3;
+
+	private final static int MASTERY_GAMES = 100;
+
+	protected int wins = 0;
+	protected int losses = 0;
+	protected int ignored = 0;
+
+	protected int neverGuessed = 0;
+	protected final int[] guessMatrix = new int[10];
+	protected BigDecimal fairness = BigDecimal.ZERO;    // summed exactly so the order the games are added in doesn't matter
+	protected int guesses = 0;
+	protected int fairGuesses = 0;
+	protected int losingGuesses = 0;
+	protected int winningGuesses = 0;
+	protected int fiftyFiftyGuess = 0;
+	protected int fiftyFiftyWon = 0;
+	protected int fiftyFiftyLost = 0;
+
+	// the outcome of each game by its position in the run
+	private final BitSet played = new BitSet();
+	private final BitSet won = new BitSet();
+	private final BitSet ignoredGames = new BitSet();
+
+	/**
+	 * Record the outcome of the game at this position in the run
+	 */
+	protected void addResult(int index, int result) {
+
+		played.set(index);
+
+		if (result == WON) {
+			wins++;
+			won.set(index);
+		} else if (result == LOST) {
+			losses++;
+		} else {
+			ignored++;
+			ignoredGames.set(index);
+		}
+
+	}
+
+	protected void addFairness(double amount) {
+		fairness = fairness.add(new BigDecimal(amount));
+	}
+
+	/**
+	 * Add the statistics gathered by another worker to these
+	 */
+	protected void merge(BulkStatistics other) {
+
+		wins = wins + other.wins;
+		losses = losses + other.losses;
+		ignored = ignored + other.ignored;
+
+		neverGuessed = neverGuessed + other.neverGuessed;
+		for (int i=0; i < guessMatrix.length; i++) {
+			guessMatrix[i] = guessMatrix[i] + other.guessMatrix[i];
+		}
+		fairness = fairness.add(other.fairness);
+		guesses = guesses + other.guesses;
+		fairGuesses = fairGuesses + other.fairGuesses;
+		losingGuesses = losingGuesses + other.losingGuesses;
+		winningGuesses = winningGuesses + other.winningGuesses;
+		fiftyFiftyGuess = fiftyFiftyGuess + other.fiftyFiftyGuess;
+		fiftyFiftyWon = fiftyFiftyWon + other.fiftyFiftyWon;
+		fiftyFiftyLost = fiftyFiftyLost + other.fiftyFiftyLost;
+
+		played.or(other.played);
+		won.or(other.won);
+		ignoredGames.or(other.ignoredGames);
+
+	}
+
+	/**
+	 * The number of games which count towards the results
+	 */
+	protected int getPlayed() {
+		return wins + losses;
+	}
+
+	protected double getFairnessRatio() {
+		return fairness.doubleValue() / fairGuesses;
+	}
+
+	/**
+	 * The most games won out of any run of 100 games, taking the games in the order they appear in the run
+	 */
+	protected int getMaxMasteryCount() {
+
+		boolean[] mastery = new boolean[MASTERY_GAMES];
+		int masteryCount = 0;
+		int maxMasteryCount = 0;
+		int counted = 0;
+
+		for (int index = played.nextSetBit(0); index >= 0; index = played.nextSetBit(index + 1)) {
+
+			int masteryIndex = counted % MASTERY_GAMES;
+			if (mastery[masteryIndex]) {
+				masteryCount--;
+			}
+
+			if (won.get(index)) {
+				mastery[masteryIndex] = true;
+				masteryCount++;
+				maxMasteryCount = Math.max(masteryCount, maxMasteryCount);
+			} else {
+				mastery[masteryIndex] = false;
+			}
+
+			// an ignored game doesn't take a place in the run
+			if (!ignoredGames.get(index)) {
+				counted++;
+			}
+		}
+
+		return maxMasteryCount;
+	}
+
+}
@@ -0,0 +1,130 @@
+package minesweeperbulk;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Writes the result of each game of a bulk run to a file as the run goes along.
+ *
+ * The bulk runner hands over the results in game order, so the file is the same however many threads played the run. It is
+ * flushed after each result, so it can be read while the run is still going.
+ *
+ * The binary format is the 4 bytes "MSBR", an int version and then for each game: int index, long seed, byte outcome, int guesses,
+ * int moves, long solve time in milliseconds and int 3BV (zero when the game type doesn't support it).
+ *
+ * @author David
+ */
+public class GameResultWriter implements Closeable {
+
+	public enum Format {
+		CSV,
+		BINARY;
+	}
+
+	private static final int MAGIC = 0x4D534252;     // "MSBR"
+	private static final int VERSION = 1;
+
+	/**
+	 * The result of one game
+	 */
+	protected static class GameRecord {
+
+		protected final int index;         // the position of the game in the run
+		protected final long seed;
+		protected final int result;        // BulkStatistics WON, LOST or IGNORE
+		protected final int guesses;
+		protected final int moves;
+		protected final long solveTime;    // milliseconds spent in the solver
+		protected final int value3BV;
+
+		protected GameRecord(int index, long seed, int result, int guesses, int moves, long solveTime, int value3BV) {
+			this.index = index;
+			this.seed = seed;
+			this.result = result;
+			this.guesses = guesses;
+			this.moves = moves;
+			this.solveTime = solveTime;
+			this.value3BV = value3BV;
+		}
+
+		protected String outcome() {
+			if (result == BulkStatistics.WON) {
+				return "won";
+			} else if (result == BulkStatistics.LOST) {
+				return "lost";
+			} else {
+				return "ignored";
+			}
+		}
+
+	}
+
+	private final Format format;
+	private final BufferedWriter csv;
+	private final DataOutputStream binary;
+
+	public GameResultWriter(String file, Format format) throws IOException {
+
+		this.format = format;
+
+		if (format == Format.CSV) {
+			this.csv = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(file)), StandardCharsets.UTF_8));
+			this.binary = null;
+			csv.write("index,seed,outcome,guesses,moves,solve_ms,3bv");
+			csv.newLine();
+		} else {
+			this.csv = null;
+			this.binary = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(file))));
+			binary.writeInt(MAGIC);
+			binary.writeInt(VERSION);
+		}
+
+	}
+
+	/**
+	 * Write a game's result, the results are expected in game order
+	 */
+	protected synchronized void write(GameRecord record) throws IOException {
+
+		if (format == Format.CSV) {
+			csv.write(record.index + "," + record.seed + "," + record.outcome() + "," + record.guesses + "," + record.moves + "," + record.solveTime + "," + record.value3BV);
+			csv.newLine();
+		} else {
+			binary.writeInt(record.index);
+			binary.writeLong(record.seed);
+			binary.writeByte(record.result);
+			binary.writeInt(record.guesses);
+			binary.writeInt(record.moves);
+			binary.writeLong(record.solveTime);
+			binary.writeInt(record.value3BV);
+		}
+
+		flush();
+
+	}
+
+	private void flush() throws IOException {
+		if (format == Format.CSV) {
+			csv.flush();
+		} else {
+			binary.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (format == Format.CSV) {
+			csv.close();
+		} else {
+			binary.close();
+		}
+	}
+
+}
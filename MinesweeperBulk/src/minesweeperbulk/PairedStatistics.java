@@ -0,0 +1,149 @@
+package minesweeperbulk;
+
+/**
+ * The statistics of a comparison run, where every game is played with two solver settings on the same board.
+ *
+ * Because both settings play the same boards, only the games where one setting wins and the other loses say anything about which
+ * is better. McNemar's test on those discordant games needs far fewer games to reach a conclusion than comparing the win rates of
+ * two separate runs. A game which either setting ignored is left out of the comparison.
+ *
+ * @author David
+ */
+public class PairedStatistics {
+
+	protected int bothWon = 0;
+	protected int onlyAWon = 0;
+	protected int onlyBWon = 0;
+	protected int bothLost = 0;
+
+	// the solve time of setting B less that of A, in milliseconds
+	private long timeDeltaSum = 0;
+	private double timeDeltaSquares = 0;
+
+	/**
+	 * Add a game played by both settings
+	 */
+	protected void add(GameResultWriter.GameRecord a, GameResultWriter.GameRecord b) {
+
+		if (a.result == BulkStatistics.IGNORE || b.result == BulkStatistics.IGNORE) {
+			return;
+		}
+
+		boolean aWon = (a.result == BulkStatistics.WON);
+		boolean bWon = (b.result == BulkStatistics.WON);
+
+		if (aWon && bWon) {
+			bothWon++;
+		} else if (aWon) {
+			onlyAWon++;
+		} else if (bWon) {
+			onlyBWon++;
+		} else {
+			bothLost++;
+		}
+
+		long delta = b.solveTime - a.solveTime;
+		timeDeltaSum = timeDeltaSum + delta;
+		timeDeltaSquares = timeDeltaSquares + (double) delta * (double) delta;
+
+	}
+
+	/**
+	 * The number of games both settings played to a finish
+	 */
+	protected int getPairs() {
+		return bothWon + onlyAWon + onlyBWon + bothLost;
+	}
+
+	/**
+	 * The number of games where one setting won and the other lost
+	 */
+	protected int getDiscordant() {
+		return onlyAWon + onlyBWon;
+	}
+
+	/**
+	 * The difference in win rate, setting B less setting A
+	 */
+	protected double getWinRateDelta() {
+		return (double) (onlyBWon - onlyAWon) / (double) getPairs();
+	}
+
+	/**
+	 * The 95% confidence interval half width of the difference in win rate, using the paired variance
+	 */
+	protected double getWinRateDeltaError() {
+
+		double n = getPairs();
+		double d = getWinRateDelta();
+		double variance = ((double) getDiscordant() / n - d * d) / n;
+
+		return Math.sqrt(Math.max(0, variance)) * 1.9599d;
+	}
+
+	/**
+	 * McNemar's chi-squared statistic with the continuity correction
+	 */
+	protected double getMcNemarChiSquared() {
+
+		int discordant = getDiscordant();
+		if (discordant == 0) {
+			return 0;
+		}
+
+		double diff = Math.max(0, Math.abs(onlyAWon - onlyBWon) - 1);
+
+		return diff * diff / discordant;
+	}
+
+	/**
+	 * The exact two sided p-value of McNemar's test, the chance of the discordant games being at least this one-sided if the
+	 * settings were equally good
+	 */
+	protected double getMcNemarPValue() {
+
+		int n = getDiscordant();
+		if (n == 0) {
+			return 1;
+		}
+
+		int k = Math.min(onlyAWon, onlyBWon);
+
+		// sum the binomial(n, 1/2) probabilities of 0 to k, working in logs since 2^n overflows
+		double log2n = n * Math.log(2);
+		double logChoose = 0;
+		double tail = 0;
+		for (int i=0; i <= k; i++) {
+			if (i > 0) {
+				logChoose = logChoose + Math.log(n - i + 1) - Math.log(i);
+			}
+			tail = tail + Math.exp(logChoose - log2n);
+		}
+
+		return Math.min(1, 2 * tail);
+	}
+
+	/**
+	 * The average solve time of setting B less that of A per game, in milliseconds
+	 */
+	protected double getTimeDelta() {
+		return (double) timeDeltaSum / (double) getPairs();
+	}
+
+	/**
+	 * The 95% confidence interval half width of the average solve time difference
+	 */
+	protected double getTimeDeltaError() {
+
+		double n = getPairs();
+		if (n < 2) {
+			return 0;
+		}
+
+		double mean = getTimeDelta();
+		double variance = (timeDeltaSquares - n * mean * mean) / (n - 1);
+
+		return Math.sqrt(Math.max(0, variance) / n) * 1.9599d;
+	}
+
+}
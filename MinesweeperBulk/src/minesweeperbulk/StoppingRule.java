@@ -0,0 +1,150 @@
+package minesweeperbulk;
+
+import java.text.DecimalFormat;
+
+/**
+ * Decides when a bulk run has played enough games to answer the question it was asked, so it can end before playing all of them.
+ *
+ * The rule is shown the games in the order they appear in the run, so it stops at the same game however many threads are playing.
+ *
+ * @author David
+ */
+public abstract class StoppingRule {
+
+	private static final DecimalFormat MASK = new DecimalFormat("#0.000");
+
+	/**
+	 * Stop once the 95% confidence interval of the win rate is no wider than +/- the half width
+	 */
+	protected static StoppingRule precision(double halfWidth, int minGames) {
+		return new Precision(halfWidth, minGames);
+	}
+
+	/**
+	 * A sequential probability ratio test of the win rate being p0 against it being p1. It stops once either can be accepted with
+	 * the chance of wrongly accepting p1 no more than alpha and of wrongly accepting p0 no more than beta.
+	 */
+	protected static StoppingRule sprt(double p0, double p1, double alpha, double beta) {
+		return new Sprt(p0, p1, alpha, beta);
+	}
+
+	/**
+	 * Add the next counted game of the run, returns true if the run can stop now
+	 */
+	protected abstract boolean update(boolean won);
+
+	/**
+	 * A description of the rule and, once it has stopped, why
+	 */
+	protected abstract String describe();
+
+	private static class Precision extends StoppingRule {
+
+		private final double halfWidth;
+		private final int minGames;
+
+		private int played = 0;
+		private int wins = 0;
+		private boolean stopped = false;
+
+		private Precision(double halfWidth, int minGames) {
+			this.halfWidth = halfWidth;
+			this.minGames = minGames;
+		}
+
+		@Override
+		protected boolean update(boolean won) {
+
+			played++;
+			if (won) {
+				wins++;
+			}
+
+			// too few games and the estimate of the error isn't reliable
+			if (played < minGames) {
+				return false;
+			}
+
+			double p = (double) wins / (double) played;
+			double err = Math.sqrt(p * ( 1- p) / (double) played) * 1.9599d;
+
+			stopped = (err <= halfWidth);
+
+			return stopped;
+		}
+
+		@Override
+		protected String describe() {
+
+			String text = "stop when the win rate is known to +/- " + MASK.format(halfWidth * 100) + "% after at least " + minGames + " games";
+			if (stopped) {
+				text = text + ", reached after " + played + " games";
+			}
+
+			return text;
+		}
+
+	}
+
+	private static class Sprt extends StoppingRule {
+
+		private final double p0;
+		private final double p1;
+
+		private final double winStep;       // the change in the log likelihood ratio for a win
+		private final double lossStep;      // and for a loss
+		private final double upper;         // accept p1 at or above this
+		private final double lower;         // accept p0 at or below this
+
+		private int played = 0;
+		private double llr = 0;
+		private String decision = null;
+
+		private Sprt(double p0, double p1, double alpha, double beta) {
+
+			this.p0 = p0;
+			this.p1 = p1;
+
+			this.winStep = Math.log(p1 / p0);
+			this.lossStep = Math.log((1 - p1) / (1 - p0));
+			this.upper = Math.log((1 - beta) / alpha);
+			this.lower = Math.log(beta / (1 - alpha));
+
+		}
+
+		@Override
+		protected boolean update(boolean won) {
+
+			played++;
+
+			if (won) {
+				llr = llr + winStep;
+			} else {
+				llr = llr + lossStep;
+			}
+
+			if (llr >= upper) {
+				decision = "accepted a win rate of " + MASK.format(p1 * 100) + "%";
+			} else if (llr <= lower) {
+				decision = "accepted a win rate of " + MASK.format(p0 * 100) + "%";
+			}
+
+			return (decision != null);
+		}
+
+		@Override
+		protected String describe() {
+
+			String text = "sequential test of a " + MASK.format(p0 * 100) + "% win rate against " + MASK.format(p1 * 100) + "%";
+			if (decision != null) {
+				text = text + ", " + decision + " after " + played + " games";
+			} else {
+				text = text + ", undecided after " + played + " games (log likelihood ratio " + MASK.format(llr) + ")";
+			}
+
+			return text;
+		}
+
+	}
+
+}
@@ -7,6 +7,7 @@ package minesweeper.structure;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import minesweeper.gamestate.MoveMethod;
 
@@ -27,7 +28,8 @@ public class Action extends Location {
     private final static BigDecimal MINUS_ONE = new BigDecimal("-1");
     private final static BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
     
-    static long globalUID = 0;
+    // actions can be created by solvers running on different threads
+    static final AtomicLong globalUID = new AtomicLong();
     
     private final long myUID;
     private final int action;
@@ -47,7 +49,7 @@ public class Action extends Location {
     
     // used by the computer coach
     public Action(Location l, int a, MoveMethod moveMethod, String comment, BigDecimal bigProb) {
-    	this(l, a, moveMethod, comment, bigProb, globalUID++);
+    	this(l, a, moveMethod, comment, bigProb, globalUID.getAndIncrement());
         
     }    
     